@@ -0,0 +1,58 @@
+package org.lappsgrid.example;
+
+import org.lappsgrid.serialization.Data;
+
+/**
+ * how a service serializes its response, with the settings of the lappsgrid Serializer: COMPACT
+ * on one line or PRETTY indented. A request picks a mode with the Data parameter PARAMETER, e.g.
+ * "output-mode": "pretty". Shared by pi1-yuany2 and pi2-yuany2
+ *
+ * @author yuany
+ *
+ */
+public enum OutputMode {
+  COMPACT, PRETTY;
+
+  /**
+   * name of the Data parameter selecting the mode of a response
+   */
+  public static final String PARAMETER = "output-mode";
+
+  /**
+   * @param data
+   *          response to serialize
+   * @return the JSON of the response
+   */
+  public String serialize(Data<?> data) {
+    return this == PRETTY ? data.asPrettyJson() : data.asJson();
+  }
+
+  /**
+   * @param name
+   *          name of a mode in any case
+   * @param fallback
+   *          mode to use if the name is null or unknown
+   * @return the named mode
+   */
+  public static OutputMode forName(String name, OutputMode fallback) {
+    if (name != null) {
+      for (OutputMode mode : values()) {
+        if (mode.name().equalsIgnoreCase(name))
+          return mode;
+      }
+    }
+    return fallback;
+  }
+
+  /**
+   * @param request
+   *          data received by a service
+   * @param fallback
+   *          mode of the service
+   * @return the mode asked for by the request, or the fallback
+   */
+  public static OutputMode of(Data<?> request, OutputMode fallback) {
+    Object name = request.getParameter(PARAMETER);
+    return forName(name == null ? null : name.toString(), fallback);
+  }
+}
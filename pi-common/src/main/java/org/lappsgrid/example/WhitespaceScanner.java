@@ -0,0 +1,123 @@
+package org.lappsgrid.example;
+
+/**
+ * splits a range of a text at Unicode whitespace in a single pass over its characters, yielding
+ * the offsets of each token; the word of a token is only built as a string when it is asked for.
+ * Nothing is allocated per token, so arbitrarily long texts are scanned without an array of
+ * words. Whitespace is what Character.isWhitespace or Character.isSpaceChar accepts, which
+ * includes the no-break spaces. Shared by pi1-yuany2 and pi2-yuany2
+ *
+ * @author yuany
+ *
+ */
+public class WhitespaceScanner {
+
+  private final CharSequence text;
+
+  private final int limit;
+
+  /**
+   * where the scan continues
+   */
+  private int position;
+
+  private int start = -1;
+
+  private int end = -1;
+
+  /**
+   * @param text
+   *          text to scan
+   */
+  public WhitespaceScanner(CharSequence text) {
+    this(text, 0, text.length());
+  }
+
+  /**
+   * @param text
+   *          text to scan
+   * @param from
+   *          offset where the scan starts
+   * @param to
+   *          offset where the scan ends
+   */
+  public WhitespaceScanner(CharSequence text, int from, int to) {
+    if (from < 0 || to > text.length() || from > to)
+      throw new IndexOutOfBoundsException("Range " + from + "-" + to + " of a text of length "
+              + text.length());
+    this.text = text;
+    this.position = from;
+    this.limit = to;
+  }
+
+  /**
+   * move to the next token
+   *
+   * @return whether there is one
+   */
+  public boolean next() {
+    int i = position;
+    while (i < limit && isWhitespace(text.charAt(i)))
+      i++;
+    if (i == limit) {
+      position = limit;
+      start = end = -1;
+      return false;
+    }
+    start = i;
+    while (i < limit && !isWhitespace(text.charAt(i)))
+      i++;
+    end = i;
+    position = i;
+    return true;
+  }
+
+  /**
+   * @return offset of the first character of the current token
+   */
+  public int start() {
+    return start;
+  }
+
+  /**
+   * @return offset after the last character of the current token
+   */
+  public int end() {
+    return end;
+  }
+
+  /**
+   * @return the current token as a string
+   */
+  public String word() {
+    if (start < 0)
+      throw new IllegalStateException("No current token");
+    return text.subSequence(start, end).toString();
+  }
+
+  /**
+   * @param text
+   *          text to scan
+   * @return number of tokens in the text
+   */
+  public static int count(CharSequence text) {
+    int tokens = 0;
+    WhitespaceScanner scanner = new WhitespaceScanner(text);
+    while (scanner.next())
+      tokens++;
+    return tokens;
+  }
+
+  /**
+   * @param c
+   *          a character
+   * @return whether the character separates tokens
+   */
+  public static boolean isWhitespace(char c) {
+    if (c <= ' ')
+      return c == ' ' || (c >= '\t' && c <= '\r') || (c >= '\u001C' && c <= '\u001F');
+    if (c < '\u0080')
+      return false;
+    return Character.isWhitespace(c) || Character.isSpaceChar(c);
+  }
+}
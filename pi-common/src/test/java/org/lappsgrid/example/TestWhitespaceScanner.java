@@ -0,0 +1,72 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestWhitespaceScanner {
+
+  private static void assertToken(WhitespaceScanner scanner, String word, int start) {
+    assertTrue("Missing token " + word, scanner.next());
+    assertEquals(word, scanner.word());
+    assertEquals(start, scanner.start());
+    assertEquals(start + word.length(), scanner.end());
+  }
+
+  @Test
+  public void testOffsets() {
+    WhitespaceScanner scanner = new WhitespaceScanner("  his\t\tis\n");
+    assertToken(scanner, "his", 2);
+    assertToken(scanner, "is", 7);
+    assertFalse(scanner.next());
+    assertEquals(-1, scanner.start());
+  }
+
+  @Test
+  public void testRange() {
+    String text = "Q Who? A1 1 John loves Mary";
+    WhitespaceScanner scanner = new WhitespaceScanner(text, 12, 21);
+    assertToken(scanner, "John", 12);
+    assertToken(scanner, "love", 17); // the range ends inside the word
+    assertFalse(scanner.next());
+  }
+
+  @Test
+  public void testUnicodeWhitespace() {
+    WhitespaceScanner scanner = new WhitespaceScanner("abc\u00A0def\u2003 gh\u3000");
+    assertToken(scanner, "abc", 0);
+    assertToken(scanner, "def", 4);
+    assertToken(scanner, "gh", 9);
+    assertFalse(scanner.next());
+  }
+
+  @Test
+  public void testCount() {
+    assertEquals(0, WhitespaceScanner.count(""));
+    assertEquals(0, WhitespaceScanner.count(" \t\n\u00A0"));
+    assertEquals(3, WhitespaceScanner.count(" a bc  d"));
+  }
+
+  @Test
+  public void testNoCurrentToken() {
+    try {
+      new WhitespaceScanner("abc").word();
+      fail("a word before the first token");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBadRange() {
+    try {
+      new WhitespaceScanner("abc", 2, 4);
+      fail("a range beyond the text");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+}
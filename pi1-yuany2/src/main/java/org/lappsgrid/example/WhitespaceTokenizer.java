@@ -12,6 +12,7 @@ import org.lappsgrid.vocabulary.Features;
 // additional API for metadata
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
+
 import java.util.Map;
 
 /**
@@ -23,6 +24,11 @@ public class WhitespaceTokenizer implements ProcessingService {
    */
   private String metadata;
 
+  /**
+   * mode of responses whose request does not ask for one
+   */
+  private OutputMode outputMode = OutputMode.COMPACT;
+
   public WhitespaceTokenizer() {
     metadata = generateMetadata();
   }
@@ -53,7 +59,18 @@ public class WhitespaceTokenizer implements ProcessingService {
     metadata.setProduces(produces);
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
-    return data.asPrettyJson();
+    return data.asJson();
+  }
+
+  public OutputMode getOutputMode() {
+    return outputMode;
+  }
+
+  /**
+   * @param outputMode mode of responses whose request does not ask for one
+   */
+  public void setOutputMode(OutputMode outputMode) {
+    this.outputMode = outputMode;
   }
 
   @Override
@@ -67,12 +84,27 @@ public class WhitespaceTokenizer implements ProcessingService {
   @Override
   public String execute(String input) {
     // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
+    Data request = Serializer.parse(input, Data.class);
+    Data<?> response = respond(request);
+    if (response == null) {
+      return input;
+    }
+    if (!(response instanceof DataContainer)) {
+      return response.asJson();
+    }
+    // Step #8: Serialize the data object in the mode of the request or of the service.
+    return OutputMode.of(request, outputMode).serialize(response);
+  }
+
+  /**
+   * @return the tokenized container or an error; null if the input is an error to pass on
+   */
+  private Data<?> respond(Data data) {
     // Step #2: Check the discriminator
     final String discriminator = data.getDiscriminator();
     if (discriminator.equals(Uri.ERROR)) {
       // Return the input unchanged.
-      return input;
+      return null;
     }
     // Step #3: Extract the text.
     Container container = null;
@@ -84,31 +116,24 @@ public class WhitespaceTokenizer implements ProcessingService {
     } else {
       // This is a format we don't accept.
       String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
+      return new Data<String>(Uri.ERROR, message);
     }
     // Step #4: Create a new View
     View view = container.newView();
     // Step #5: Tokenize the text and add annotations.
-    String text = container.getText();
-    String[] words = text.trim().split("\\s+");
+    // One pass over the text: the scanner yields the offsets of each token at Unicode whitespace,
+    // so no array of words is split off and no word has to be searched for again.
+    WhitespaceScanner scanner = new WhitespaceScanner(container.getText());
     int id = -1;
-    int start = 0;
-    for (String word : words) {
-      start = text.indexOf(word, start);
-      if (start < 0) {
-        return new Data<String>(Uri.ERROR, "Unable to match word: " + word).asJson();
-      }
-      int end = start + word.length();
-      Annotation a = view.newAnnotation("tok" + (++id), Uri.TOKEN, start, end);
-      a.addFeature(Features.Token.WORD, word);
+    while (scanner.next()) {
+      Annotation a = view.newAnnotation("tok" + (++id), Uri.TOKEN, scanner.start(), scanner.end());
+      a.addFeature(Features.Token.WORD, scanner.word());
     }
     // Step #6: Update the view's metadata. Each view contains metadata about the
     // annotations it contains, in particular the name of the tool that produced the
     // annotations.
     view.addContains(Uri.TOKEN, this.getClass().getName(), "whitespace");
     // Step #7: Create a DataContainer with the result.
-    data = new DataContainer(container);
-    // Step #8: Serialize the data object and return the JSON.
-    return data.asPrettyJson();
+    return new DataContainer(container);
   }
 }
\ No newline at end of file
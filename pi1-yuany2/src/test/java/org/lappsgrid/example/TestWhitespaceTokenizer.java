@@ -176,6 +176,63 @@ public class TestWhitespaceTokenizer
     assertEquals("Token 2: wrong word", "def", token.getFeature(Features.Token.WORD));
   }
 
+  @Test
+  public void testUnicodeWhitespace()
+  {
+    // no-break space, em space and ideographic space separate tokens too
+    String text = "abc\u00A0def\u2003 gh\u3000";
+    Container container = execute(text);
+
+    assertEquals("Text not set correctly", text, container.getText());
+    List<Annotation> annotations = container.getViews().get(0).getAnnotations();
+    if (annotations.size() != 3)
+    {
+      fail(String.format("Expected 3 annotations. Found %d", annotations.size()));
+    }
+    Annotation token = annotations.get(1);
+    assertEquals("Token 2: wrong start", 4L, token.getStart().longValue());
+    assertEquals("Token 2: wrong end", 7L, token.getEnd().longValue());
+    assertEquals("Token 2: wrong word", "def", token.getFeature(Features.Token.WORD));
+
+    token = annotations.get(2);
+    assertEquals("Token 3: wrong start", 9L, token.getStart().longValue());
+    assertEquals("Token 3: wrong end", 11L, token.getEnd().longValue());
+    assertEquals("Token 3: wrong word", "gh", token.getFeature(Features.Token.WORD));
+  }
+
+  @Test
+  public void testWordInsidePreviousWord()
+  {
+    Container container = execute("his is");
+    Annotation token = container.getViews().get(0).getAnnotations().get(1);
+    assertEquals("Token 2: wrong start", 4L, token.getStart().longValue());
+    assertEquals("Token 2: wrong end", 6L, token.getEnd().longValue());
+  }
+
+  @Test
+  public void testEmptyText()
+  {
+    Container container = execute(" \t\n");
+    assertEquals("Whitespace only text has no tokens", 0,
+        container.getViews().get(0).getAnnotations().size());
+  }
+
+  @Test
+  public void testOutputMode()
+  {
+    Data<String> data = new Data<String>(Uri.TEXT, "abc def");
+    String compact = service.execute(data.asJson());
+    assertFalse("Default output is not compact", compact.contains("\n"));
+
+    data.setParameter(OutputMode.PARAMETER, "pretty");
+    String pretty = service.execute(data.asJson());
+    assertTrue("Pretty output not selected by the request", pretty.contains("\n"));
+
+    data.setParameter(OutputMode.PARAMETER, "unknown");
+    assertEquals("Unknown mode does not fall back to the service's", compact,
+        service.execute(data.asJson()));
+  }
+
   protected Container execute(String input)
   {
     return execute(new Data<String>(Uri.TEXT, input));
@@ -0,0 +1,89 @@
+package org.lappsgrid.example.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.example.BinaryLif;
+import org.lappsgrid.example.ContainerService;
+import org.lappsgrid.example.Evaluator;
+import org.lappsgrid.example.NGramMaker;
+import org.lappsgrid.example.Preprocessor;
+import org.lappsgrid.example.Scorer;
+import org.lappsgrid.example.Tokenizer;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares writing and reading the container of a finished pipeline as pretty LIF JSON and as
+ * binary LIF. The sizes of both encodings are printed once per trial
+ *
+ * @author yuany
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  public int answers;
+
+  private Container container;
+
+  private String json;
+
+  private byte[] binary;
+
+  @Setup(Level.Trial)
+  public void prepare() {
+    ContainerService[] stages = { new Preprocessor(), new Tokenizer(), new NGramMaker(3),
+        new Scorer(3), new Evaluator() };
+    String lif = new Data<>(Uri.TEXT, Documents.make(answers, 16, 11791L)).asJson();
+    for (ContainerService stage : stages)
+      lif = stage.execute(lif);
+    container = BinaryLif.toContainer(lif);
+    json = new DataContainer(container).asPrettyJson();
+    binary = BinaryLif.encode(container);
+    System.out.printf("%n%d answers: json %d bytes, binary %d bytes%n", answers, json.length(),
+            binary.length);
+  }
+
+  @Benchmark
+  public String writeJson() {
+    return new DataContainer(container).asPrettyJson();
+  }
+
+  @Benchmark
+  public byte[] writeBinary() {
+    return BinaryLif.encode(container);
+  }
+
+  @Benchmark
+  @SuppressWarnings("rawtypes")
+  public Container readJson() {
+    return new Container((Map) Serializer.parse(json, Data.class).getPayload());
+  }
+
+  @Benchmark
+  public Container readBinary() {
+    return BinaryLif.decode(binary);
+  }
+}
@@ -0,0 +1,47 @@
+package org.lappsgrid.example.bench;
+
+import java.util.Random;
+
+/**
+ * makes synthetic question/answer documents in the input format of the Preprocessor: a question
+ * "Q ...?" followed by answers "A&lt;id&gt; &lt;isCorrect&gt; ...", all on one line
+ *
+ * @author yuany
+ *
+ */
+public class Documents {
+
+  private static final String[] WORDS = { "John", "loves", "Mary", "with", "all", "his", "heart",
+      "is", "dearly", "loved", "by", "doesn't", "love", "the", "quick", "brown", "fox", "jumps",
+      "over", "lazy", "dog", "hates", "cat", "Mary's", "friend" };
+
+  private Documents() {
+  }
+
+  /**
+   * @param answers
+   *          number of answers
+   * @param sentenceLength
+   *          number of words of the question and of every answer
+   * @param seed
+   *          seed of the word choice, so that a benchmark sees the same document in every fork
+   * @return the document
+   */
+  public static String make(int answers, int sentenceLength, long seed) {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder("Q");
+    appendWords(sb, sentenceLength, random);
+    sb.append('?');
+    for (int i = 1; i <= answers; i++) {
+      sb.append(" A").append(i).append(' ').append(random.nextInt(2));
+      appendWords(sb, sentenceLength, random);
+      sb.append('.');
+    }
+    return sb.toString();
+  }
+
+  private static void appendWords(StringBuilder sb, int count, Random random) {
+    for (int i = 0; i < count; i++)
+      sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+  }
+}
@@ -0,0 +1,152 @@
+package org.lappsgrid.example.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.lappsgrid.example.Preprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares Preprocessor.findTriples with the substring/regex based implementation it replaced on
+ * lines with long answer lists; -prof gc gives the bytes allocated per line
+ *
+ * @author yuany
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PreprocessorBenchmark {
+
+  private static final String[] WORDS = { "John", "loves", "Mary", "with", "all", "his", "heart",
+      "is", "dearly", "loved", "by", "doesn't", "love", "." };
+
+  @Param({ "10", "100", "1000", "10000" })
+  public int answers;
+
+  private String line;
+
+  @Setup(Level.Trial)
+  public void prepare() {
+    line = makeLine(answers, new Random(answers));
+    if (!Arrays.equals(Preprocessor.findTriples(line), flatten(legacyFindTriples(line))))
+      throw new IllegalStateException("The spans differ for " + answers + " answers");
+  }
+
+  /**
+   * @return the spans of the question and the answers
+   */
+  @Benchmark
+  public int[] findTriples() {
+    return Preprocessor.findTriples(line);
+  }
+
+  /**
+   * @return the same spans by the former Preprocessor.findTriples
+   */
+  @Benchmark
+  public ArrayList<ArrayList<Integer>> legacy() {
+    return legacyFindTriples(line);
+  }
+
+  /**
+   * @return a question followed by the given number of answers; answer ids cycle through A1-A9 so
+   *         the legacy implementation can parse them
+   */
+  private static String makeLine(int answers, Random random) {
+    StringBuilder sb = new StringBuilder("Q John loves Mary?");
+    for (int i = 0; i < answers; i++) {
+      sb.append(" A").append(i % 9 + 1).append(' ').append(random.nextInt(2));
+      for (int j = random.nextInt(12); j >= 0; j--)
+        sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static int[] flatten(ArrayList<ArrayList<Integer>> triples) {
+    int[] spans = new int[triples.size() * 3];
+    for (int i = 0; i < spans.length; i++)
+      spans[i] = triples.get(i / 3).get(i % 3);
+    return spans;
+  }
+
+  /**
+   * the former Preprocessor.findTriples
+   */
+  private static ArrayList<ArrayList<Integer>> legacyFindTriples(String line) {
+
+    if (line == null)
+      return null;
+
+    ArrayList<ArrayList<Integer>> triples = new ArrayList<ArrayList<Integer>>();
+    int ptr = 0;
+    int len = line.length();
+    ArrayList<Integer> triple = new ArrayList<>();
+
+    ptr += 1; // move to first char in Q
+    triple.add(ptr + 1); // add start
+    while (!line.substring(ptr + 1, legacyNextToken(line, ptr)).matches("A\\d")) {
+      ptr = legacyNextToken(line, ptr);
+    }
+    triple.add(ptr); // add end
+    triple.add(-1); // placeholder
+    triples.add(triple);
+
+    // now ptr points to the space before A1
+    while (ptr < len) {
+      triple = new ArrayList<>();
+      ptr = legacyNextToken(line, ptr);
+      int isCorrect = Integer.parseInt(line.substring(ptr + 1, legacyNextToken(line, ptr)));
+      ptr = legacyNextToken(line, ptr);
+      triple.add(ptr + 1);
+      while (!(ptr + 1 >= line.length())
+              && !line.substring(ptr + 1, legacyNextToken(line, ptr)).matches("A\\d")) {
+        ptr = legacyNextToken(line, ptr);
+      }
+      triple.add(ptr);
+      triple.add(isCorrect);
+      triples.add(triple);
+    }
+
+    return triples;
+  }
+
+  /**
+   * the former Preprocessor.nextToken
+   */
+  private static int legacyNextToken(String line, int ptr) {
+
+    if (ptr + 1 == line.length())
+      return ptr + 1;
+
+    if (line.substring(ptr, ptr + 1).equals(" ")) {
+      ptr++;
+      if (ptr + 1 == line.length())
+        return ptr + 1;
+    }
+
+    while (!line.substring(ptr, ptr + 1).equals(" ")) {
+      ptr++;
+      if (ptr + 1 == line.length())
+        return ptr + 1;
+    }
+
+    return ptr;
+  }
+}
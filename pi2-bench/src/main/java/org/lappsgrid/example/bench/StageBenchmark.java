@@ -0,0 +1,207 @@
+package org.lappsgrid.example.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.lappsgrid.api.WebService;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.example.ContainerService;
+import org.lappsgrid.example.Evaluator;
+import org.lappsgrid.example.NGramMaker;
+import org.lappsgrid.example.Preprocessor;
+import org.lappsgrid.example.QAPipeline;
+import org.lappsgrid.example.Scorer;
+import org.lappsgrid.example.Tokenizer;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks every stage of PI2 and the whole QAPipeline on synthetic documents. Each stage is
+ * measured on its own: the container it reads is rebuilt from the LIF of the previous stages
+ * before every invocation, outside of the measured time, since stages add views to it. Run
+ * target/benchmarks.jar with -prof gc, or this class, to also get allocation rates
+ *
+ * @author yuany
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+  /**
+   * a synthetic document and its LIF after each stage
+   */
+  @State(Scope.Benchmark)
+  public static class Document {
+
+    @Param({ "10", "100", "1000" })
+    public int answers;
+
+    @Param({ "8", "32" })
+    public int sentenceLength;
+
+    @Param({ "1", "2", "3" })
+    public int ngrams;
+
+    String text;
+
+    /**
+     * the stages in pipeline order
+     */
+    ContainerService[] stages;
+
+    /**
+     * lif[k] is the output of the first k stages, lif[0] the raw text
+     */
+    String[] lif;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+      text = Documents.make(answers, sentenceLength, 11791L);
+      stages = new ContainerService[] { new Preprocessor(), new Tokenizer(),
+          new NGramMaker(ngrams), new Scorer(ngrams), new Evaluator() };
+      lif = new String[stages.length + 1];
+      lif[0] = new Data<>(Uri.TEXT, text).asJson();
+      for (int i = 0; i < stages.length; i++)
+        lif[i + 1] = stages[i].execute(lif[i]);
+    }
+
+    /**
+     * @param done
+     *          number of stages which have been run
+     * @return a fresh container holding the output of the first stages
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    Container input(int done) {
+      if (done == 0) {
+        Container container = new Container();
+        container.setText(text);
+        return container;
+      }
+      return new Container((Map) Serializer.parse(lif[done], Data.class).getPayload());
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class PreprocessorInput {
+    Container container;
+
+    @Setup(Level.Invocation)
+    public void prepare(Document document) {
+      container = document.input(0);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class TokenizerInput {
+    Container container;
+
+    @Setup(Level.Invocation)
+    public void prepare(Document document) {
+      container = document.input(1);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class NGramMakerInput {
+    Container container;
+
+    @Setup(Level.Invocation)
+    public void prepare(Document document) {
+      container = document.input(2);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ScorerInput {
+    Container container;
+
+    @Setup(Level.Invocation)
+    public void prepare(Document document) {
+      container = document.input(3);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class EvaluatorInput {
+    Container container;
+
+    @Setup(Level.Invocation)
+    public void prepare(Document document) {
+      container = document.input(4);
+    }
+  }
+
+  @Benchmark
+  public Container preprocessor(Document document, PreprocessorInput input) {
+    return document.stages[0].execute(input.container);
+  }
+
+  @Benchmark
+  public Container tokenizer(Document document, TokenizerInput input) {
+    return document.stages[1].execute(input.container);
+  }
+
+  @Benchmark
+  public Container nGramMaker(Document document, NGramMakerInput input) {
+    return document.stages[2].execute(input.container);
+  }
+
+  @Benchmark
+  public Container scorer(Document document, ScorerInput input) {
+    return document.stages[3].execute(input.container);
+  }
+
+  @Benchmark
+  public Container evaluator(Document document, EvaluatorInput input) {
+    return document.stages[4].execute(input.container);
+  }
+
+  /**
+   * the whole pipeline from raw text to the evaluated container, as Main runs it
+   */
+  @Benchmark
+  public Container pipeline(Document document) {
+    QAPipeline pipe = new QAPipeline(document.stages.length);
+    for (WebService stage : document.stages)
+      pipe.addService(stage);
+    pipe.setPipelineInput(document.text);
+    pipe.runPipeline();
+    return pipe.getOutputContainer();
+  }
+
+  /**
+   * run all benchmarks with the GC profiler
+   *
+   * @param args
+   *          nothing needs to be input
+   * @throws RunnerException
+   *           if the benchmarks can not be run
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder().include(StageBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class).build();
+    new Runner(options).run();
+  }
+}
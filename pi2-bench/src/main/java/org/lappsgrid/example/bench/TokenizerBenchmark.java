@@ -0,0 +1,102 @@
+package org.lappsgrid.example.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.lappsgrid.example.WhitespaceScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares WhitespaceScanner with the split/indexOf tokenization it replaced on texts of growing
+ * size. The UTF-8 size of the text is printed once per trial, so that the time per operation
+ * reads as MB/s; -prof gc gives the bytes allocated per operation
+ *
+ * @author yuany
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+  private static final String[] WORDS = { "John", "loves", "Mary", "with", "all", "his", "heart",
+      "is", "dearly", "loved", "by", "doesn't", "love", "." };
+
+  private static final String[] SPACES = { " ", " ", " ", "  ", "\t", "\n" };
+
+  @Param({ "100", "10000", "1000000" })
+  public int words;
+
+  private String text;
+
+  @Setup(Level.Trial)
+  public void prepare() {
+    Random random = new Random(words);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < words; i++)
+      sb.append(SPACES[random.nextInt(SPACES.length)])
+              .append(WORDS[random.nextInt(WORDS.length)]);
+    text = sb.toString();
+    check();
+    System.out.printf("%n%d words: %d bytes%n", words,
+            text.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  /**
+   * check that the scanner finds the words split by the former implementation, at offsets holding
+   * them. The former offsets themselves are not compared: searching a word from the start of the
+   * previous one finds "is" inside "his"
+   */
+  private void check() {
+    WhitespaceScanner scanner = new WhitespaceScanner(text);
+    for (String word : text.trim().split("\\s+")) {
+      if (!scanner.next() || !scanner.word().equals(word)
+              || !text.substring(scanner.start(), scanner.end()).equals(word))
+        throw new IllegalStateException("The scanner differs at " + word);
+    }
+    if (scanner.next())
+      throw new IllegalStateException("The scanner finds more words");
+  }
+
+  /**
+   * @return a checksum of the offsets and the words found by the scanner
+   */
+  @Benchmark
+  public long scan() {
+    long sum = 0;
+    WhitespaceScanner scanner = new WhitespaceScanner(text);
+    while (scanner.next())
+      sum = sum * 31 + scanner.start() * 7 + scanner.end() + scanner.word().length();
+    return sum;
+  }
+
+  /**
+   * @return the same checksum by the former Tokenizer.execute
+   */
+  @Benchmark
+  public long legacy() {
+    long sum = 0;
+    int start = 0;
+    for (String word : text.trim().split("\\s+")) {
+      start = text.indexOf(word, start);
+      int end = start + word.length();
+      sum = sum * 31 + start * 7 + end + word.length();
+    }
+    return sum;
+  }
+}
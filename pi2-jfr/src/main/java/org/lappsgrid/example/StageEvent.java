@@ -0,0 +1,105 @@
+package org.lappsgrid.example;
+
+import java.lang.management.ManagementFactory;
+
+import org.lappsgrid.serialization.lif.Container;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * a Java Flight Recorder event for one run of an in-process stage on one document: the stage, the
+ * document, the views and annotations the stage added and the bytes the stage allocated on its
+ * thread, over the duration of the run. The event costs nothing but a check while no recording
+ * asks for it. Runs are wrapped into events by the StageInterceptor StageRecording installs
+ *
+ * @author yuany
+ *
+ */
+@Name(StageEvent.NAME)
+@Label("Pipeline Stage")
+@Category({ "LAPPS", "Pipeline" })
+@Description("Run of an in-process pipeline stage on one document")
+@StackTrace(false)
+public class StageEvent extends jdk.jfr.Event {
+
+  /**
+   * name of the event type in a recording
+   */
+  public static final String NAME = "org.lappsgrid.example.Stage";
+
+  @Label("Stage")
+  @Description("Class name of the service")
+  String stage;
+
+  @Label("Document")
+  @Description("Id of the document, if the pipeline knows it")
+  String document;
+
+  @Label("Views")
+  @Description("Views added by the stage")
+  int views;
+
+  @Label("Annotations")
+  @Description("Annotations added by the stage")
+  int annotations;
+
+  @Label("Allocated")
+  @Description("Bytes allocated by the thread running the stage")
+  @DataAmount(DataAmount.BYTES)
+  long allocated;
+
+  /**
+   * run a stage, recorded as an event if a recording asks for it
+   *
+   * @param service
+   *          the stage
+   * @param container
+   *          input of the stage
+   * @param document
+   *          id of the document, or null
+   * @param next
+   *          interceptor the stage is run through, or null to run it directly
+   * @return output of the stage
+   */
+  static Container execute(ContainerService service, Container container, String document,
+          StageInterceptor next) {
+    StageEvent event = new StageEvent();
+    if (!event.isEnabled())
+      return run(service, container, document, next);
+    int size = container.getViews().size();
+    long allocated = allocatedBytes();
+    event.begin();
+    container = run(service, container, document, next);
+    event.end();
+    if (event.shouldCommit()) {
+      event.allocated = allocatedBytes() - allocated;
+      event.stage = service.getClass().getName();
+      event.document = document;
+      event.views = container.getViews().size() - size;
+      event.annotations = StageMetrics.annotations(container, size);
+      event.commit();
+    }
+    return container;
+  }
+
+  private static Container run(ContainerService service, Container container, String document,
+          StageInterceptor next) {
+    return next == null ? service.execute(container) : next.execute(service, container, document);
+  }
+
+  /**
+   * @return bytes allocated so far by the current thread, -1 if the runtime does not tell
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    return ((com.sun.management.ThreadMXBean) threads)
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
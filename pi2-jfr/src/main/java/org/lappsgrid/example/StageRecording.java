@@ -0,0 +1,269 @@
+package org.lappsgrid.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.lappsgrid.serialization.lif.Container;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * records a run of the pipeline into a Java Flight Recorder file, StageEvents and allocation
+ * samples included, and summarizes such a file by stage: the latency of the runs, the bytes they
+ * allocated and the annotations they added, and which frames the sampled allocations of each stage
+ * come from. A sample is attributed to the stage which ran on its thread when it was taken. The
+ * file can also be opened in JDK Mission Control. Main --jfr loads this class when the pi2-jfr
+ * module is on the class path
+ *
+ * @author yuany
+ *
+ */
+public class StageRecording {
+
+  /**
+   * allocation events, by the field holding their weight in bytes: sampled allocations from Java 16
+   * on, allocations in new thread local buffers before
+   */
+  private static final String[][] ALLOCATIONS = { { "jdk.ObjectAllocationSample", "weight" },
+      { "jdk.ObjectAllocationInNewTLAB", "tlabSize" } };
+
+  /**
+   * frames listed for each stage
+   */
+  private static final int FRAMES = 5;
+
+  /**
+   * start recording with the profile settings of the runtime, which sample allocations, until the
+   * returned handle is closed. Meanwhile every in-process run of a stage goes through StageEvent,
+   * and on through the interceptor installed before, which closing the handle puts back
+   *
+   * @param file
+   *          the recording is written to this file when it is closed
+   * @return handle stopping the recording and writing the file
+   * @throws IOException
+   *           if the settings can not be read or the file can not be written
+   */
+  public static Closeable start(String file) throws IOException {
+    final Recording recording;
+    try {
+      recording = new Recording(Configuration.getConfiguration("profile"));
+    } catch (ParseException e) {
+      throw new IOException("Unable to read the recording settings: " + e.getMessage(), e);
+    }
+    recording.setName("pipeline");
+    recording.enable(StageEvent.class);
+    recording.setToDisk(true);
+    recording.setDestination(Paths.get(file));
+    recording.start();
+    final StageInterceptor previous = ContainerService.getInterceptor();
+    ContainerService.setInterceptor(new StageInterceptor() {
+      @Override
+      public Container execute(ContainerService service, Container container, String document) {
+        return StageEvent.execute(service, container, document, previous);
+      }
+    });
+    return new Closeable() {
+      @Override
+      public void close() {
+        ContainerService.setInterceptor(previous);
+        recording.stop();
+        recording.close();
+      }
+    };
+  }
+
+  /**
+   * summarize a recording by stage
+   *
+   * @param args
+   *          the recording file
+   * @throws IOException
+   *           if the recording can not be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("usage: StageRecording recording.jfr");
+      System.exit(1);
+    }
+    summarize(RecordingFile.readAllEvents(Paths.get(args[0])), System.out);
+  }
+
+  /**
+   * print the latency, allocation and annotations of each stage, then the frames its sampled
+   * allocations come from
+   *
+   * @param events
+   *          events of a recording
+   * @param out
+   *          stream to print to
+   */
+  public static void summarize(List<RecordedEvent> events, PrintStream out) {
+    Map<String, List<RecordedEvent>> stages = new TreeMap<>();
+    Map<Long, List<RecordedEvent>> threads = new HashMap<>();
+    for (RecordedEvent event : events) {
+      if (!event.getEventType().getName().equals(StageEvent.NAME))
+        continue;
+      String stage = event.getString("stage");
+      if (!stages.containsKey(stage))
+        stages.put(stage, new ArrayList<RecordedEvent>());
+      stages.get(stage).add(event);
+      long thread = event.getThread().getJavaThreadId();
+      if (!threads.containsKey(thread))
+        threads.put(thread, new ArrayList<RecordedEvent>());
+      threads.get(thread).add(event);
+    }
+    if (stages.isEmpty()) {
+      out.println("no " + StageEvent.NAME + " events");
+      return;
+    }
+
+    out.printf("%-20s %8s %9s %9s %9s %12s %12s %11s%n", "stage", "runs", "mean", "p50", "p99",
+            "MB alloc", "KB/run", "annotations");
+    for (Map.Entry<String, List<RecordedEvent>> stage : stages.entrySet()) {
+      List<RecordedEvent> runs = stage.getValue();
+      long[] nanos = new long[runs.size()];
+      long allocated = 0;
+      long annotations = 0;
+      for (int i = 0; i < runs.size(); i++) {
+        nanos[i] = runs.get(i).getDuration().toNanos();
+        allocated += Math.max(0, runs.get(i).getLong("allocated"));
+        annotations += runs.get(i).getInt("annotations");
+      }
+      Arrays.sort(nanos);
+      long total = 0;
+      for (long n : nanos)
+        total += n;
+      out.printf("%-20s %8d %9.3f %9.3f %9.3f %12.2f %12.1f %11d%n", simpleName(stage.getKey()),
+              runs.size(), total / 1e6 / runs.size(), percentile(nanos, 0.5) / 1e6,
+              percentile(nanos, 0.99) / 1e6, allocated / 1e6, allocated / 1e3 / runs.size(),
+              annotations);
+    }
+
+    Comparator<RecordedEvent> byStart = new Comparator<RecordedEvent>() {
+      @Override
+      public int compare(RecordedEvent a, RecordedEvent b) {
+        return a.getStartTime().compareTo(b.getStartTime());
+      }
+    };
+    for (List<RecordedEvent> runs : threads.values())
+      Collections.sort(runs, byStart);
+    Map<String, Map<String, Long>> frames = new TreeMap<>();
+    for (RecordedEvent event : events) {
+      String field = weightField(event);
+      if (field == null || event.getThread() == null)
+        continue;
+      RecordedEvent run = runAt(threads.get(event.getThread().getJavaThreadId()), event);
+      if (run == null)
+        continue;
+      String stage = run.getString("stage");
+      if (!frames.containsKey(stage))
+        frames.put(stage, new HashMap<String, Long>());
+      Map<String, Long> weights = frames.get(stage);
+      String frame = topFrame(event.getStackTrace());
+      Long weight = weights.get(frame);
+      weights.put(frame, (weight == null ? 0 : weight) + event.getLong(field));
+    }
+    if (frames.isEmpty())
+      return;
+    out.println();
+    out.println("sampled allocations by stage and frame:");
+    for (Map.Entry<String, Map<String, Long>> stage : frames.entrySet()) {
+      List<Map.Entry<String, Long>> weights = new ArrayList<>(stage.getValue().entrySet());
+      long total = 0;
+      for (Map.Entry<String, Long> weight : weights)
+        total += weight.getValue();
+      Collections.sort(weights, new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+          return Long.compare(b.getValue(), a.getValue());
+        }
+      });
+      out.printf("%-20s %12.2f MB%n", simpleName(stage.getKey()), total / 1e6);
+      for (Map.Entry<String, Long> weight : weights.subList(0, Math.min(FRAMES, weights.size())))
+        out.printf("  %5.1f%%  %s%n", 100.0 * weight.getValue() / Math.max(total, 1),
+                weight.getKey());
+    }
+  }
+
+  /**
+   * @return the field holding the weight of an allocation event, or null if the event is none
+   */
+  private static String weightField(RecordedEvent event) {
+    String name = event.getEventType().getName();
+    for (String[] allocation : ALLOCATIONS)
+      if (allocation[0].equals(name))
+        return allocation[1];
+    return null;
+  }
+
+  /**
+   * @param runs
+   *          stage events of a thread, by start time, or null
+   * @param event
+   *          event on the same thread
+   * @return the stage event during which the event happened, or null
+   */
+  private static RecordedEvent runAt(List<RecordedEvent> runs, RecordedEvent event) {
+    if (runs == null)
+      return null;
+    int low = 0;
+    int high = runs.size() - 1;
+    RecordedEvent run = null;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (runs.get(mid).getStartTime().isAfter(event.getStartTime()))
+        high = mid - 1;
+      else {
+        run = runs.get(mid);
+        low = mid + 1;
+      }
+    }
+    return run == null || run.getEndTime().isBefore(event.getStartTime()) ? null : run;
+  }
+
+  /**
+   * @return the frame allocating, outside of the java and jdk classes where there is one
+   */
+  private static String topFrame(RecordedStackTrace stackTrace) {
+    if (stackTrace == null || stackTrace.getFrames().isEmpty())
+      return "(no stack trace)";
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      String type = frame.getMethod().getType().getName();
+      if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun."))
+        return format(frame);
+    }
+    return format(stackTrace.getFrames().get(0));
+  }
+
+  private static String format(RecordedFrame frame) {
+    return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":"
+            + frame.getLineNumber();
+  }
+
+  private static String simpleName(String className) {
+    return className.substring(className.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * @return the value at the fraction of the sorted values
+   */
+  private static long percentile(long[] sorted, double fraction) {
+    return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+  }
+}
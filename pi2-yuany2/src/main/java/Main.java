@@ -1,10 +1,32 @@
-import java.io.File;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.lappsgrid.api.WebService;
+import org.lappsgrid.example.BatchRunner;
+import org.lappsgrid.example.CorpusStatistics;
+import org.lappsgrid.example.CorpusStatisticsBuilder;
 
 import org.lappsgrid.example.Evaluator;
+import org.lappsgrid.example.MetricsAggregator;
 import org.lappsgrid.example.NGramMaker;
 import org.lappsgrid.example.Preprocessor;
 import org.lappsgrid.example.QAPipeline;
+import org.lappsgrid.example.RemoteService;
 import org.lappsgrid.example.Scorer;
+import org.lappsgrid.example.StageCache;
+import org.lappsgrid.example.StageMetrics;
+import org.lappsgrid.example.StandardSimilarity;
 import org.lappsgrid.example.Tokenizer;
 
 /**
@@ -19,32 +41,201 @@ public class Main {
    * main entrance of PI3
    * 
    * @param args
-   *          ngram input_file_path output_dir
+   *          ngram input_dir|input_file output_dir|output_file [options]; a directory of qNNN.txt
+   *          files is answered by aNNN.txt files, a record file with one question per line
+   *          (optionally .gz) by a single record file. Options are --threads=N|virtual (number of
+   *          processors by default), --ordered to write outputs in input order and
+   *          --similarity=overlap|weighted-jaccard|tfidf-cosine|bm25 (overlap by default) and
+   *          --stats=FILE to score with the ngram document frequencies kept in FILE and add the
+   *          answers of this run not counted there yet, --compact-ngrams to keep the ngrams as
+   *          packed ints instead of annotations, --depth=K to rank only the top K answers by score
+   *          and --cache=MB to cache the output of each stage in MB megabytes of memory, and
+   *          --cache-dir=DIR to keep the cached outputs in DIR across runs as well, which is never
+   *          pruned, --stage-metrics to measure each stage, expose it through JMX and report it at
+   *          the end, --stage-metrics=SECONDS to report it every SECONDS on standard error as well and
+   *          --stage-metrics-json to report it as json, --stage-threads=N to run the stages of a
+   *          question which do not depend on each other on a pool of N threads, --remote=I,J to
+   *          call the stages at positions I and J only through their LIF interface as remote web
+   *          services, --binary-transport to hand containers to such services as binary LIF or
+   *          --delta-transport to have them answer with only the views they add or change,
+   *          --skip-done to skip the in-process stages whose view an earlier stage already added,
+   *          and --jfr=FILE to record the run into a Java Flight Recorder file, which
+   *          StageRecording summarizes by stage; --jfr needs the pi2-jfr module on the class path
+   * @throws IOException
+   *           if the record files can not be opened
    */
-  public static void main(String[] args) {
-    // TODO Every annotation must record the following: (1) the name of a component that produces
-    // the annotation, and (2) the component's confidence score assigned to the annotation.
+  public static void main(String[] args) throws IOException {
+    // Every annotation records (1) the name of a component that produces the annotation, and (2)
+    // the component's confidence score assigned to the annotation: once per view as its
+    // Provenance, and in the annotation where it differs (see Provenance.of(view, index)).
     int ngrams = Integer.parseInt(args[0]);
     String inputPath = args[1];
     String outputPath = args[2];
-    if (!new File(outputPath).exists())
-      new File(outputPath).mkdirs();
-
-    QAPipeline pipe = new QAPipeline(5);
-    pipe.addService(new Preprocessor());
-    pipe.addService(new Tokenizer());
-    pipe.addService(new NGramMaker(ngrams));
-    pipe.addService(new Scorer(ngrams));
-    pipe.addService(new Evaluator());
-
-    for (String filename : new File(inputPath).list()) {
-      if (!filename.matches("q\\d\\d\\d.txt"))
-        continue;
-      pipe.setPipelineInput(pipe.readInput(inputPath + "/" + filename));
-      pipe.runPipeline();
-      pipe.writeOutput(outputPath + "/a" + filename.substring(1), pipe.getOutput());
+
+    boolean compact = Boolean.parseBoolean(option(args, "compact-ngrams", "false"));
+    Scorer scorer = new Scorer(ngrams,
+            StandardSimilarity.forName(option(args, "similarity", "overlap")));
+    List<WebService> stages = Arrays.<WebService> asList(new Preprocessor(), new Tokenizer(),
+            new NGramMaker(ngrams, compact), scorer, new Evaluator(
+                    Integer.parseInt(option(args, "depth", Integer.toString(Integer.MAX_VALUE)))));
+    String remote = option(args, "remote", null);
+    if (remote != null) {
+      for (String position : remote.split(",")) {
+        int i = Integer.parseInt(position);
+        stages.set(i, new RemoteService(stages.get(i)));
+      }
+    }
+    QAPipeline pipe = new QAPipeline(stages.size());
+    for (WebService stage : stages)
+      pipe.addService(stage);
+
+    String workers = option(args, "threads",
+            Integer.toString(Runtime.getRuntime().availableProcessors()));
+    boolean ordered = Boolean.parseBoolean(option(args, "ordered", "false"));
+    int threads = workers.equals("virtual") ? 0 : Integer.parseInt(workers);
+
+    String statsPath = option(args, "stats", null);
+    CorpusStatistics corpus = null;
+    CorpusStatisticsBuilder collector = null;
+    if (statsPath != null) {
+      corpus = CorpusStatistics.open(statsPath);
+      collector = new CorpusStatisticsBuilder(corpus);
+      scorer.setCorpusStatistics(corpus);
+      scorer.setCollector(collector);
     }
 
+    MetricsAggregator metrics = new MetricsAggregator();
+    String cacheSize = option(args, "cache", null);
+    String cacheDir = option(args, "cache-dir", null);
+    StageCache cache = null;
+    if (cacheSize != null || cacheDir != null)
+      cache = new StageCache(
+              (cacheSize == null ? 64 : Long.parseLong(cacheSize)) * 1024 * 1024, cacheDir);
+    String stageReport = option(args, "stage-metrics", null);
+    final boolean json = Boolean.parseBoolean(option(args, "stage-metrics-json", "false"));
+    final StageMetrics stageMetrics = stageReport == null && !json ? null : new StageMetrics(true);
+    ScheduledExecutorService reporter = null;
+    if (stageMetrics != null && stageReport != null && !stageReport.equals("true")) {
+      long seconds = Long.parseLong(stageReport);
+      if (seconds <= 0)
+        throw new IllegalArgumentException(
+                "--stage-metrics=SECONDS needs a positive number of seconds, not " + stageReport);
+      reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "stage-metrics");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      reporter.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          report(stageMetrics, json, System.err);
+        }
+      }, seconds, seconds, TimeUnit.SECONDS);
+    }
+    ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads)
+            : newVirtualThreadExecutor();
+    int inFlight = 4 * (threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    String stageThreads = option(args, "stage-threads", null);
+    ForkJoinPool stagePool = stageThreads == null ? null
+            : new ForkJoinPool(Integer.parseInt(stageThreads));
+    String jfr = option(args, "jfr", null);
+    Closeable recording = jfr == null ? null : startRecording(jfr);
+    try {
+      BatchRunner runner = new BatchRunner(pipe, executor, inFlight, ordered);
+      runner.setMetrics(metrics);
+      runner.setCache(cache);
+      runner.setStageMetrics(stageMetrics);
+      runner.setStagePool(stagePool);
+      runner.setBinaryTransport(Boolean.parseBoolean(option(args, "binary-transport", "false")));
+      runner.setDeltaTransport(Boolean.parseBoolean(option(args, "delta-transport", "false")));
+      runner.setSkipDone(Boolean.parseBoolean(option(args, "skip-done", "false")));
+      runner.run(inputPath, outputPath);
+    } finally {
+      executor.shutdown();
+      if (stagePool != null)
+        stagePool.shutdown();
+      if (reporter != null)
+        reporter.shutdown();
+      if (recording != null)
+        recording.close();
+    }
+    metrics.report(System.out);
+    if (cache != null)
+      System.out.printf("stage cache: %d hits, %d misses%n", cache.getHits(), cache.getMisses());
+    if (collector != null)
+      collector.write(statsPath, corpus);
+    if (stageMetrics != null)
+      report(stageMetrics, json, System.out);
+  }
+
+  /**
+   * print the metrics of the stages as a table or as a json line
+   */
+  private static void report(StageMetrics stageMetrics, boolean json, PrintStream out) {
+    if (json)
+      out.println(stageMetrics.toJson());
+    else
+      stageMetrics.report(out);
+  }
+
+  /**
+   * look up an option given as --name=value, or as --name for a flag
+   * 
+   * @param args
+   *          command line arguments
+   * @param name
+   *          name of the option
+   * @param defaultValue
+   *          value if the option is not given
+   * @return value of the option, "true" for a flag
+   */
+  private static String option(String[] args, String name, String defaultValue) {
+    for (int i = 3; i < args.length; i++) {
+      if (args[i].equals("--" + name))
+        return "true";
+      if (args[i].startsWith("--" + name + "="))
+        return args[i].substring(name.length() + 3);
+    }
+    return defaultValue;
+  }
+
+  /**
+   * virtual threads need a java 21 runtime while the project is built for older ones, so the
+   * executor is looked up reflectively
+   * 
+   * @return an executor starting a virtual thread per task
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException("virtual threads need java 21 or later", e);
+    }
+  }
+
+  /**
+   * @return handle of a Flight Recorder recording into the file, by StageRecording of the pi2-jfr
+   *         module, which needs the jdk.jfr of java 8u272 or later and is not part of this one
+   */
+  private static Closeable startRecording(String file) throws IOException {
+    try {
+      Method start = Class.forName("org.lappsgrid.example.StageRecording").getMethod("start",
+              String.class);
+      return (Closeable) start.invoke(null, file);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IllegalStateException("Unable to start the recording", e.getCause());
+    } catch (ReflectiveOperationException | LinkageError e) {
+      throw new UnsupportedOperationException(
+              "--jfr needs the pi2-jfr module on the class path and java 8u272 or later", e);
+    }
   }
 
 }
@@ -0,0 +1,359 @@
+package org.lappsgrid.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.lappsgrid.api.WebService;
+
+/**
+ * runs the stages of a pipeline over many questions concurrently, either a directory of qNNN.txt
+ * files or a single record stream. The services are shared between tasks while every task gets
+ * its own QAPipeline, since a pipeline keeps its input and output as fields
+ *
+ * @author yuany
+ *
+ */
+public class BatchRunner {
+
+  /**
+   * destination of the outputs of a batch
+   */
+  private interface Sink {
+    /**
+     * @param id
+     *          id of the record which has been run
+     * @param pipe
+     *          pipeline holding the output of the record
+     */
+    void write(String id, QAPipeline pipe);
+  }
+
+  /**
+   * stages shared by all tasks
+   */
+  private List<WebService> stages;
+
+  private ExecutorService executor;
+
+  /**
+   * maximum number of records submitted but not yet written
+   */
+  private int maxInFlight;
+
+  /**
+   * whether outputs are written in input order
+   */
+  private boolean ordered;
+
+  /**
+   * aggregator every task adds its evaluation to, or null
+   */
+  private MetricsAggregator metrics;
+
+  /**
+   * cache of the stage outputs shared by all tasks, or null
+   */
+  private StageCache cache;
+
+  /**
+   * latency and throughput of each stage over all tasks, or null
+   */
+  private StageMetrics stageMetrics;
+
+  /**
+   * pool running the independent stages of every task in parallel, or null
+   */
+  private ForkJoinPool stagePool;
+
+  /**
+   * whether containers are handed to plain web services as binary LIF
+   */
+  private boolean binaryTransport;
+
+  /**
+   * whether plain web services are asked to answer with deltas
+   */
+  private boolean deltaTransport;
+
+  /**
+   * whether in-process stages whose view the input already holds are skipped
+   */
+  private boolean skipDone;
+
+  /**
+   * @param template
+   *          pipeline whose stages are run for every record
+   * @param executor
+   *          executor running the tasks, e.g. a fixed pool or a virtual thread per task executor
+   * @param maxInFlight
+   *          maximum number of records submitted but not yet written
+   * @param ordered
+   *          write outputs in input order on the calling thread instead of as soon as each task
+   *          is done
+   */
+  public BatchRunner(Pipeline template, ExecutorService executor, int maxInFlight,
+          boolean ordered) {
+    this.stages = new ArrayList<>(template.getPipelineStages());
+    this.executor = executor;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.ordered = ordered;
+  }
+
+  /**
+   * @param metrics
+   *          aggregator every task adds the evaluation of its question to, or null for none
+   */
+  public void setMetrics(MetricsAggregator metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param cache
+   *          cache of the stage outputs shared by all tasks, or null for none
+   */
+  public void setCache(StageCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * @param stageMetrics
+   *          records the latency and throughput of each stage over all tasks, or null for none
+   */
+  public void setStageMetrics(StageMetrics stageMetrics) {
+    this.stageMetrics = stageMetrics;
+  }
+
+  /**
+   * @param stagePool
+   *          pool running the stages of a task which do not depend on each other in parallel,
+   *          shared by all tasks, or null to run the stages of a task one after another
+   */
+  public void setStagePool(ForkJoinPool stagePool) {
+    this.stagePool = stagePool;
+  }
+
+  /**
+   * @param binaryTransport
+   *          hand containers to the plain web services of every task as binary LIF instead of
+   *          LIF JSON; only for services which accept it
+   */
+  public void setBinaryTransport(boolean binaryTransport) {
+    this.binaryTransport = binaryTransport;
+  }
+
+  /**
+   * @param deltaTransport
+   *          ask the plain web services of every task to answer with only the views they appended
+   *          or changed; not used together with binary transport
+   */
+  public void setDeltaTransport(boolean deltaTransport) {
+    this.deltaTransport = deltaTransport;
+  }
+
+  /**
+   * @param skipDone
+   *          skip the in-process stages of every task whose view the container already holds
+   */
+  public void setSkipDone(boolean skipDone) {
+    this.skipDone = skipDone;
+  }
+
+  /**
+   * run every question of the input and print a throughput summary. If the input is a directory
+   * each qNNN.txt file in it is answered by an aNNN.txt file in the output directory, otherwise the
+   * input is read as a record stream and answered by a single output stream
+   *
+   * @param inputPath
+   *          directory of question files, or a record file
+   * @param outputPath
+   *          directory where the answer files are written, or the output record file
+   * @throws IOException
+   *           if the record streams can not be opened
+   */
+  public void run(String inputPath, final String outputPath) throws IOException {
+    if (new File(inputPath).isDirectory()) {
+      new File(outputPath).mkdirs();
+      run(directory(inputPath), new Sink() {
+        @Override
+        public void write(String id, QAPipeline pipe) {
+          pipe.writeOutput(outputPath + "/a" + id.substring(1));
+        }
+      });
+      return;
+    }
+
+    try (QARecordReader reader = new QARecordReader(inputPath);
+            final QARecordWriter writer = new QARecordWriter(outputPath)) {
+      run(reader, new Sink() {
+        @Override
+        public void write(String id, QAPipeline pipe) {
+          writer.write(id, pipe);
+        }
+      });
+    }
+  }
+
+  /**
+   * run the records keeping at most maxInFlight of them in memory
+   *
+   * @param records
+   *          records to run
+   * @param sink
+   *          destination of the outputs
+   */
+  private void run(Iterator<QARecord> records, Sink sink) {
+    long begin = System.nanoTime();
+    int done = 0;
+    int failed = 0;
+    if (ordered) {
+      ArrayDeque<Future<QAPipeline>> pending = new ArrayDeque<>();
+      ArrayDeque<String> ids = new ArrayDeque<>();
+      while (records.hasNext()) {
+        if (pending.size() == maxInFlight) {
+          failed += write(pending.poll(), ids.poll(), sink) ? 0 : 1;
+          done++;
+        }
+        QARecord record = records.next();
+        pending.add(executor.submit(newTask(record, null)));
+        ids.add(record.getId());
+      }
+      while (!pending.isEmpty()) {
+        failed += write(pending.poll(), ids.poll(), sink) ? 0 : 1;
+        done++;
+      }
+    } else {
+      CompletionService<QAPipeline> completion = new ExecutorCompletionService<>(executor);
+      int inFlight = 0;
+      while (records.hasNext()) {
+        if (inFlight == maxInFlight) {
+          failed += await(completion) ? 0 : 1;
+          done++;
+          inFlight--;
+        }
+        completion.submit(newTask(records.next(), sink));
+        inFlight++;
+      }
+      for (; inFlight > 0; inFlight--) {
+        failed += await(completion) ? 0 : 1;
+        done++;
+      }
+    }
+
+    double seconds = (System.nanoTime() - begin) / 1e9;
+    System.out.printf("processed %d questions (%d failed) in %.3f s: %.1f questions/s%n", done,
+            failed, seconds, done / seconds);
+  }
+
+  /**
+   * @param inputPath
+   *          directory of question files
+   * @return records of the qNNN.txt files in name order, each read when it is reached
+   */
+  private Iterator<QARecord> directory(final String inputPath) {
+    String[] filenames = new File(inputPath).list();
+    Arrays.sort(filenames);
+    final List<String> questions = new ArrayList<>();
+    for (String filename : filenames) {
+      if (filename.matches("q\\d\\d\\d.txt"))
+        questions.add(filename);
+    }
+    final QAPipeline reader = new QAPipeline(0);
+    return new Iterator<QARecord>() {
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < questions.size();
+      }
+
+      @Override
+      public QARecord next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        String filename = questions.get(i++);
+        return new QARecord(filename, reader.readInput(inputPath + "/" + filename));
+      }
+    };
+  }
+
+  /**
+   * create a task running a fresh pipeline on one record
+   *
+   * @param record
+   *          question to run
+   * @param sink
+   *          destination written by the task itself, or null to leave writing to the caller
+   * @return the task returning its pipeline
+   */
+  private Callable<QAPipeline> newTask(final QARecord record, final Sink sink) {
+    return new Callable<QAPipeline>() {
+      @Override
+      public QAPipeline call() {
+        QAPipeline pipe = new QAPipeline(stages.size());
+        for (WebService service : stages)
+          pipe.addService(service);
+        pipe.setCache(cache);
+        pipe.setStageMetrics(stageMetrics);
+        pipe.setStagePool(stagePool);
+        pipe.setBinaryTransport(binaryTransport);
+        pipe.setDeltaTransport(deltaTransport);
+        pipe.setSkipDone(skipDone);
+        pipe.setDocumentId(record.getId());
+        pipe.setPipelineInput(record.getText());
+        pipe.runPipeline();
+        if (metrics != null)
+          metrics.add(pipe.getOutputContainer());
+        if (sink != null)
+          sink.write(record.getId(), pipe);
+        return pipe;
+      }
+    };
+  }
+
+  /**
+   * wait for a task and write its output
+   *
+   * @return whether the task succeeded
+   */
+  private boolean write(Future<QAPipeline> future, String id, Sink sink) {
+    try {
+      sink.write(id, future.get());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.getCause().printStackTrace();
+    }
+    return false;
+  }
+
+  /**
+   * wait for any task, which has already written its output
+   *
+   * @return whether the task succeeded
+   */
+  private boolean await(CompletionService<QAPipeline> completion) {
+    try {
+      completion.take().get();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.getCause().printStackTrace();
+    }
+    return false;
+  }
+}
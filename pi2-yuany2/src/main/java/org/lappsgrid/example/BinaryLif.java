@@ -0,0 +1,455 @@
+package org.lappsgrid.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * a compact binary encoding of a LIF container. Ids, types, feature keys and values, producer
+ * names and the other short strings are written once and referenced by their index afterwards,
+ * numbers are varints and annotation ends are stored relative to their starts. Services exchange
+ * it as a Data object whose discriminator is FORMAT and whose payload is the base64 of the bytes,
+ * so that services which only know JSON reject it as an unsupported discriminator
+ *
+ * @author yuany
+ *
+ */
+public class BinaryLif {
+
+  /**
+   * discriminator of a Data object carrying a binary container
+   */
+  public static final String FORMAT = "http://vocab.lappsgrid.org/ns/media/binary#lif";
+
+  private static final int MAGIC = 0x50324C42; // "P2LB"
+
+  private static final int VERSION = 1;
+
+  // tags of metadata and feature values
+  private static final int NULL = 0;
+
+  private static final int STRING = 1;
+
+  private static final int INTEGER = 2;
+
+  private static final int DOUBLE = 3;
+
+  private static final int TRUE = 4;
+
+  private static final int FALSE = 5;
+
+  private static final int LIST = 6;
+
+  private static final int MAP = 7;
+
+  // flags of an annotation
+  private static final int HAS_START = 1;
+
+  private static final int HAS_END = 2;
+
+  /**
+   * turns values of other classes, e.g. Contains, into maps and lists the way JSON would
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private BinaryLif() {
+  }
+
+  /**
+   * @param container
+   *          container to encode; typed features are flushed first
+   * @return the encoded container
+   */
+  public static byte[] encode(Container container) {
+    TypedFeatures.flush(container);
+    Writer out = new Writer();
+    out.int32(MAGIC);
+    out.varint(VERSION);
+    out.text(container.getText());
+    out.string(container.getLanguage());
+    out.value(container.getMetadata());
+    List<View> views = container.getViews();
+    out.varint(views.size());
+    for (View view : views) {
+      out.string(view.getId());
+      out.value(view.getMetadata());
+      List<Annotation> annotations = view.getAnnotations();
+      out.varint(annotations.size());
+      for (Annotation annotation : annotations) {
+        Long start = annotation.getStart();
+        Long end = annotation.getEnd();
+        out.varint((start != null ? HAS_START : 0) | (end != null ? HAS_END : 0));
+        out.string(annotation.getId());
+        out.string(annotation.getAtType());
+        out.string(annotation.getLabel());
+        if (start != null)
+          out.signed(start);
+        if (end != null)
+          out.signed(start != null ? end - start : end);
+        Map<?, ?> features = annotation.getFeatures();
+        out.varint(features == null ? 0 : features.size());
+        if (features != null) {
+          for (Map.Entry<?, ?> feature : features.entrySet()) {
+            out.string((String) feature.getKey());
+            out.value(feature.getValue());
+          }
+        }
+        out.value(annotation.getMetadata());
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @param bytes
+   *          bytes written by encode
+   * @return the container
+   * @throws StageException
+   *           if the bytes are not a binary container
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static Container decode(byte[] bytes) {
+    Reader in = new Reader(bytes);
+    if (bytes.length < 4 || in.int32() != MAGIC)
+      throw new StageException("Not a binary LIF container");
+    int version = (int) in.varint();
+    if (version != VERSION)
+      throw new StageException("Unsupported binary LIF version: " + version);
+
+    Container container = new Container();
+    String text = in.text();
+    if (text != null)
+      container.setText(text);
+    String language = in.string();
+    if (language != null)
+      container.setLanguage(language);
+    Object metadata = in.value();
+    if (metadata instanceof Map)
+      container.setMetadata((Map) metadata);
+    for (int views = (int) in.varint(); views > 0; views--) {
+      View view = new View();
+      view.setId(in.string());
+      metadata = in.value();
+      if (metadata instanceof Map)
+        view.setMetadata((Map) metadata);
+      int count = (int) in.varint();
+      List<Annotation> annotations = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        int flags = (int) in.varint();
+        Annotation annotation = new Annotation();
+        annotation.setId(in.string());
+        annotation.setAtType(in.string());
+        annotation.setLabel(in.string());
+        long start = 0;
+        if ((flags & HAS_START) != 0) {
+          start = in.signed();
+          annotation.setStart(start);
+        }
+        if ((flags & HAS_END) != 0)
+          annotation.setEnd(start + in.signed());
+        Map features = annotation.getFeatures();
+        for (int f = (int) in.varint(); f > 0; f--)
+          features.put(in.string(), in.value());
+        metadata = in.value();
+        if (metadata instanceof Map)
+          annotation.setMetadata((Map) metadata);
+        annotations.add(annotation);
+      }
+      view.setAnnotations(annotations);
+      container.addView(view);
+    }
+    return container;
+  }
+
+  /**
+   * @param container
+   *          container to send
+   * @return Data object carrying the encoded container
+   */
+  public static Data<String> asData(Container container) {
+    return new Data<String>(FORMAT, Base64.getEncoder().encodeToString(encode(container)));
+  }
+
+  /**
+   * @param container
+   *          container to send
+   * @return JSON of a Data object carrying the encoded container
+   */
+  public static String asJson(Container container) {
+    return asData(container).asJson();
+  }
+
+  /**
+   * @param data
+   *          data received by a service or a pipeline
+   * @return the container it carries as LIF or binary LIF, or null for any other format
+   * @throws StageException
+   *           if the binary payload is corrupt
+   */
+  @SuppressWarnings("rawtypes")
+  public static Container toContainer(Data data) {
+    String discriminator = data.getDiscriminator();
+    if (data.getPayload() instanceof Container)
+      return (Container) data.getPayload();
+    if (discriminator.equals(Uri.LAPPS))
+      return new Container((Map) data.getPayload());
+    if (discriminator.equals(FORMAT)) {
+      try {
+        return decode(Base64.getDecoder().decode(data.getPayload().toString()));
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        throw new StageException("Corrupt binary LIF container: " + e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param json
+   *          JSON of a Data object
+   * @return the container it carries as LIF, with lazy views, or as binary LIF; null for any
+   *         other format
+   */
+  public static Container toContainer(String json) {
+    return toContainer(LazyLif.read(json));
+  }
+
+  /**
+   * growing byte buffer with the string table of the strings written so far
+   */
+  private static final class Writer {
+
+    private byte[] buffer = new byte[4096];
+
+    private int size = 0;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private void ensure(int extra) {
+      if (size + extra > buffer.length)
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+
+    void int32(int value) {
+      ensure(4);
+      buffer[size++] = (byte) (value >>> 24);
+      buffer[size++] = (byte) (value >>> 16);
+      buffer[size++] = (byte) (value >>> 8);
+      buffer[size++] = (byte) value;
+    }
+
+    void varint(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void signed(long value) {
+      varint((value << 1) ^ (value >> 63));
+    }
+
+    void bytes(byte[] bytes) {
+      varint(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    /**
+     * a string kept out of the table, for the document text: 0 for null, else length + 1
+     */
+    void text(String text) {
+      if (text == null) {
+        varint(0);
+        return;
+      }
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      varint(bytes.length + 1L);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    /**
+     * a string through the table: 0 for null, 1 followed by the bytes of a new string, or the
+     * index of a string written before plus 2
+     */
+    void string(String string) {
+      if (string == null) {
+        varint(0);
+        return;
+      }
+      Integer index = strings.get(string);
+      if (index != null) {
+        varint(index + 2L);
+        return;
+      }
+      strings.put(string, strings.size());
+      varint(1);
+      bytes(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void value(Object value) {
+      if (value == null) {
+        varint(NULL);
+      } else if (value instanceof String) {
+        varint(STRING);
+        string((String) value);
+      } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+              || value instanceof Byte) {
+        varint(INTEGER);
+        signed(((Number) value).longValue());
+      } else if (value instanceof Number) {
+        varint(DOUBLE);
+        long bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+        int32((int) (bits >>> 32));
+        int32((int) bits);
+      } else if (value instanceof Boolean) {
+        varint((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof List) {
+        List<?> list = (List<?>) value;
+        varint(LIST);
+        varint(list.size());
+        for (Object item : list)
+          value(item);
+      } else if (value instanceof Map) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        varint(MAP);
+        varint(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          string(String.valueOf(entry.getKey()));
+          value(entry.getValue());
+        }
+      } else {
+        value(MAPPER.convertValue(value, Object.class));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+  }
+
+  /**
+   * cursor over encoded bytes with the string table read so far
+   */
+  private static final class Reader {
+
+    private final byte[] buffer;
+
+    private int position = 0;
+
+    private final List<String> strings = new ArrayList<>();
+
+    Reader(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    int int32() {
+      int value = (buffer[position] & 0xFF) << 24 | (buffer[position + 1] & 0xFF) << 16
+              | (buffer[position + 2] & 0xFF) << 8 | (buffer[position + 3] & 0xFF);
+      position += 4;
+      return value;
+    }
+
+    long varint() {
+      long value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = buffer[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0)
+          return value;
+        if (shift > 63)
+          throw new StageException("Corrupt binary LIF container: varint too long");
+      }
+    }
+
+    long signed() {
+      long value = varint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String utf8(int length) {
+      if (length < 0 || position + length > buffer.length)
+        throw new StageException("Corrupt binary LIF container: string out of bounds");
+      String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return string;
+    }
+
+    String text() {
+      long length = varint();
+      return length == 0 ? null : utf8((int) (length - 1));
+    }
+
+    String string() {
+      long reference = varint();
+      if (reference == 0)
+        return null;
+      if (reference == 1) {
+        String string = utf8((int) varint());
+        strings.add(string);
+        return string;
+      }
+      return strings.get((int) (reference - 2));
+    }
+
+    Object value() {
+      int tag = (int) varint();
+      switch (tag) {
+        case NULL:
+          return null;
+        case STRING:
+          return string();
+        case INTEGER: {
+          long value = signed();
+          // the same boxes Jackson parses JSON numbers into
+          if (value == (int) value)
+            return (int) value;
+          return value;
+        }
+        case DOUBLE: {
+          long high = int32() & 0xFFFFFFFFL;
+          return Double.longBitsToDouble(high << 32 | (int32() & 0xFFFFFFFFL));
+        }
+        case TRUE:
+          return Boolean.TRUE;
+        case FALSE:
+          return Boolean.FALSE;
+        case LIST: {
+          int size = (int) varint();
+          List<Object> list = new ArrayList<>(size);
+          for (int i = 0; i < size; i++)
+            list.add(value());
+          return list;
+        }
+        case MAP: {
+          int size = (int) varint();
+          Map<String, Object> map = new LinkedHashMap<>();
+          for (int i = 0; i < size; i++) {
+            String key = string();
+            map.put(key, value());
+          }
+          return map;
+        }
+        default:
+          throw new StageException("Corrupt binary LIF container: unknown tag " + tag);
+      }
+    }
+  }
+}
@@ -0,0 +1,387 @@
+package org.lappsgrid.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * a view of many annotations of one type kept as columns instead of objects: int arrays of the
+ * starts and ends, and for each string feature an int array of codes into a dictionary the view
+ * shares between its columns. The id of an annotation is a prefix from the dictionary followed by
+ * its position in the view. Consumers reading offsets use size(View), start(View, int) and
+ * end(View, int), which work on any view; the Annotation objects are only built, once, when
+ * getAnnotations() or any other method of View touching them is called, e.g. when the view is
+ * serialized, after which the annotations replace the columns. A feature holding the text each
+ * annotation covers, such as the word of a token, is not stored at all but cut from the text by
+ * the offsets when it is read. Metadata, typed features included, is kept as in any view
+ *
+ * @author yuany
+ *
+ */
+@JsonSerialize(using = ColumnarView.ViewSerializer.class)
+public class ColumnarView extends View {
+
+  /**
+   * marks a feature an annotation does not have
+   */
+  private static final int NONE = -1;
+
+  /**
+   * the @type of every annotation
+   */
+  private final String type;
+
+  private int size = 0;
+
+  private int[] prefixes = new int[16];
+
+  private int[] starts = new int[16];
+
+  private int[] ends = new int[16];
+
+  /**
+   * codes of each feature by name, in the order the features were first set; null for the feature
+   * of the covered text
+   */
+  private Map<String, int[]> features = new LinkedHashMap<>();
+
+  /**
+   * the strings of the id prefixes and feature values, indexed by code
+   */
+  private List<String> values = new ArrayList<>();
+
+  private Map<String, Integer> codes = new HashMap<>();
+
+  /**
+   * name of the feature holding the text each annotation covers, or null
+   */
+  private String coveredFeature;
+
+  /**
+   * text the offsets of the annotations refer to
+   */
+  private String text;
+
+  /**
+   * set once the annotations have been built; the columns are then no longer read, but are kept so
+   * that a reader which started before still sees them
+   */
+  private volatile boolean materialized = false;
+
+  /**
+   * @param id
+   *          id of the view
+   * @param type
+   *          the @type of every annotation of the view
+   */
+  public ColumnarView(String id, String type) {
+    super(id);
+    this.type = type;
+  }
+
+  /**
+   * add a columnar view to a container, with the id Container.newView() would give
+   *
+   * @param container
+   *          container the view is added to
+   * @param type
+   *          the @type of every annotation of the view
+   * @return the new view
+   */
+  public static ColumnarView newView(Container container, String type) {
+    ColumnarView view = new ColumnarView("v" + container.getViews().size(), type);
+    container.addView(view);
+    return view;
+  }
+
+  /**
+   * append an annotation
+   *
+   * @param prefix
+   *          id of the annotation without its position, e.g. "qtok"
+   * @param start
+   *          start of the annotation
+   * @param end
+   *          end of the annotation
+   * @return position of the annotation in the view
+   */
+  public synchronized int add(String prefix, int start, int end) {
+    if (materialized) {
+      newAnnotation(prefix + size(), type, start, end);
+      return size() - 1;
+    }
+    if (size == starts.length) {
+      int length = size * 2;
+      prefixes = Arrays.copyOf(prefixes, length);
+      starts = Arrays.copyOf(starts, length);
+      ends = Arrays.copyOf(ends, length);
+      for (Map.Entry<String, int[]> column : features.entrySet()) {
+        if (column.getValue() != null)
+          column.setValue(grow(column.getValue(), length));
+      }
+    }
+    prefixes[size] = encode(prefix);
+    starts[size] = start;
+    ends[size] = end;
+    if (coveredFeature != null && features.get(coveredFeature) != null)
+      features.get(coveredFeature)[size] = encode(covered(text, start, end));
+    return size++;
+  }
+
+  /**
+   * give every annotation, those added later included, a feature holding the text it covers,
+   * which is cut from the text when it is read instead of being stored
+   *
+   * @param name
+   *          feature name, e.g. Features.Token.WORD
+   * @param text
+   *          text the offsets of the annotations refer to
+   */
+  public synchronized void setCoveredText(String name, String text) {
+    if (materialized) {
+      for (Annotation annotation : super.getAnnotations())
+        annotation.addFeature(name, covered(text, annotation.getStart().intValue(),
+                annotation.getEnd().intValue()));
+      return;
+    }
+    this.coveredFeature = name;
+    this.text = text;
+    features.put(name, null);
+  }
+
+  /**
+   * @param index
+   *          position of the annotation in the view
+   * @param name
+   *          feature name
+   * @param value
+   *          value of the feature
+   */
+  public synchronized void setFeature(int index, String name, String value) {
+    if (materialized) {
+      getAnnotations().get(index).addFeature(name, value);
+      return;
+    }
+    int[] column = features.get(name);
+    if (column == null) {
+      column = grow(new int[0], starts.length);
+      if (name.equals(coveredFeature)) {
+        // the feature is stored from now on, the words so far and those of later annotations
+        // included
+        for (int i = 0; i < size; i++)
+          column[i] = encode(covered(text, starts[i], ends[i]));
+      }
+      features.put(name, column);
+    }
+    column[index] = encode(value);
+  }
+
+  /**
+   * @return number of annotations of the view
+   */
+  public int size() {
+    return materialized ? super.getAnnotations().size() : size;
+  }
+
+  /**
+   * @param index
+   *          position of the annotation in the view
+   * @return start of the annotation
+   */
+  public int start(int index) {
+    return materialized ? super.getAnnotations().get(index).getStart().intValue() : starts[index];
+  }
+
+  /**
+   * @param index
+   *          position of the annotation in the view
+   * @return end of the annotation
+   */
+  public int end(int index) {
+    return materialized ? super.getAnnotations().get(index).getEnd().intValue() : ends[index];
+  }
+
+  /**
+   * @param index
+   *          position of the annotation in the view
+   * @param name
+   *          feature name
+   * @return value of the feature, or null if the annotation does not have it
+   */
+  public String getFeature(int index, String name) {
+    if (materialized)
+      return super.getAnnotations().get(index).getFeature(name);
+    int[] column = features.get(name);
+    if (column == null && name.equals(coveredFeature))
+      return covered(text, starts[index], ends[index]);
+    return column == null || column[index] == NONE ? null : values.get(column[index]);
+  }
+
+  /**
+   * @param view
+   *          any view
+   * @return number of annotations of the view, counted without building them if it is columnar
+   */
+  public static int size(View view) {
+    return view instanceof ColumnarView ? ((ColumnarView) view).size()
+            : view.getAnnotations().size();
+  }
+
+  /**
+   * @param view
+   *          any view
+   * @param index
+   *          position of the annotation in the view
+   * @return start of the annotation
+   */
+  public static int start(View view, int index) {
+    return view instanceof ColumnarView ? ((ColumnarView) view).start(index)
+            : view.getAnnotations().get(index).getStart().intValue();
+  }
+
+  /**
+   * @param view
+   *          any view
+   * @param index
+   *          position of the annotation in the view
+   * @return end of the annotation
+   */
+  public static int end(View view, int index) {
+    return view instanceof ColumnarView ? ((ColumnarView) view).end(index)
+            : view.getAnnotations().get(index).getEnd().intValue();
+  }
+
+  /**
+   * @param view
+   *          any view
+   * @param index
+   *          position of the annotation in the view
+   * @param name
+   *          feature name
+   * @return value of the feature, or null if the annotation does not have it
+   */
+  public static String getFeature(View view, int index, String name) {
+    return view instanceof ColumnarView ? ((ColumnarView) view).getFeature(index, name)
+            : view.getAnnotations().get(index).getFeature(name);
+  }
+
+  /**
+   * @param view
+   *          any view
+   * @param index
+   *          position of the annotation in the view
+   * @param name
+   *          feature name
+   * @param value
+   *          value of the feature
+   */
+  public static void setFeature(View view, int index, String name, String value) {
+    if (view instanceof ColumnarView)
+      ((ColumnarView) view).setFeature(index, name, value);
+    else
+      view.getAnnotations().get(index).addFeature(name, value);
+  }
+
+  /**
+   * build the annotations from the columns, once
+   */
+  private synchronized void materialize() {
+    if (materialized)
+      return;
+    List<Annotation> annotations = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Annotation annotation = new Annotation(values.get(prefixes[i]) + i, type, starts[i],
+              ends[i]);
+      for (Map.Entry<String, int[]> column : features.entrySet()) {
+        if (column.getValue() == null) {
+          annotation.addFeature(column.getKey(), covered(text, starts[i], ends[i]));
+          continue;
+        }
+        int code = column.getValue()[i];
+        if (code != NONE)
+          annotation.addFeature(column.getKey(), values.get(code));
+      }
+      annotations.add(annotation);
+    }
+    super.setAnnotations(annotations);
+    materialized = true;
+  }
+
+  /**
+   * @return code of the string in the dictionary of the view, added if needed
+   */
+  private int encode(String value) {
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = values.size();
+      values.add(value);
+      codes.put(value, code);
+    }
+    return code;
+  }
+
+  private static String covered(String text, int start, int end) {
+    return text.substring(start, end);
+  }
+
+  private static int[] grow(int[] column, int length) {
+    int[] grown = Arrays.copyOf(column, length);
+    Arrays.fill(grown, column.length, length, NONE);
+    return grown;
+  }
+
+  @Override
+  public List<Annotation> getAnnotations() {
+    materialize();
+    return super.getAnnotations();
+  }
+
+  @Override
+  public void setAnnotations(List<Annotation> annotations) {
+    materialize();
+    super.setAnnotations(annotations);
+  }
+
+  @Override
+  public void addAnnotation(Annotation annotation) {
+    materialize();
+    super.addAnnotation(annotation);
+  }
+
+  @Override
+  public Annotation newAnnotation(String id, String type) {
+    materialize();
+    return super.newAnnotation(id, type);
+  }
+
+  @Override
+  public Annotation newAnnotation(String id, String type, long start, long end) {
+    materialize();
+    return super.newAnnotation(id, type, start, end);
+  }
+
+  /**
+   * writes the view as a plain View, building its annotations
+   */
+  public static class ViewSerializer extends JsonSerializer<ColumnarView> {
+
+    @Override
+    public void serialize(ColumnarView view, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+      provider.findValueSerializer(View.class).serialize(view, generator, provider);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package org.lappsgrid.example;
+
+import java.util.LinkedHashMap;
+
+import org.lappsgrid.api.ProcessingService;
+import org.lappsgrid.example.Preprocessor.Stats;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * defines a service which can run either as a web service on LIF JSON strings or in-process on a
+ * live Container, so that a pipeline only has to (de)serialize at its edges
+ *
+ * @author yuany
+ *
+ */
+public abstract class ContainerService implements ProcessingService {
+
+  /**
+   * wraps the in-process runs of every stage, or null
+   */
+  private static volatile StageInterceptor interceptor;
+
+  /**
+   * mode of responses whose request does not ask for one
+   */
+  private OutputMode outputMode = OutputMode.COMPACT;
+
+  /**
+   * @return mode of responses whose request does not ask for one
+   */
+  public OutputMode getOutputMode() {
+    return outputMode;
+  }
+
+  /**
+   * @param outputMode
+   *          mode of responses whose request does not ask for one
+   */
+  public void setOutputMode(OutputMode outputMode) {
+    this.outputMode = outputMode;
+  }
+
+  @Override
+  /**
+   * Parse the LIF JSON string, run the service on the resulting container and serialize it back
+   * in the output mode of the request or of the service. Views are only parsed when the service
+   * touches them and the others are written back unchanged. A container sent as binary LIF is
+   * answered as binary LIF
+   *
+   * @param input
+   *          LIF JSON string
+   *
+   * @return LIF JSON string
+   */
+  public String execute(String input) {
+    // Step #1: Parse the input.
+    Data request = LazyLif.read(input);
+    Data<?> response = respond(request, input);
+    if (response == null)
+      return input;
+    if (!(response instanceof DataContainer))
+      return response.asJson(); // errors, binary LIF and deltas are always compact
+    // Step #8: Serialize the data object and return the JSON.
+    return OutputMode.of(request, outputMode).serialize(response);
+  }
+
+  /**
+   * @param data
+   *          parsed request
+   * @param input
+   *          the request as it was received, the version of which a delta refers to
+   * @return the response: a DataContainer, binary LIF, a delta or an error; null if the request
+   *         is an error to be passed on unchanged
+   */
+  private Data<?> respond(Data data, String input) {
+    // Step #2: Check the discriminator
+    final String discriminator = data.getDiscriminator();
+    if (discriminator.equals(Uri.ERROR)) {
+      // Return the input unchanged.
+      return null;
+    }
+    final boolean binary = discriminator.equals(BinaryLif.FORMAT) && accepts(Uri.LAPPS);
+    if (!binary && !accepts(discriminator)) {
+      // This is a format we don't accept.
+      String message = String.format("Unsupported discriminator type: %s", discriminator);
+      return new Data<String>(Uri.ERROR, message);
+    }
+    // Step #3: Extract the text.
+    Container container = null;
+    if (discriminator.equals(Uri.TEXT)) {
+      container = new Container();
+      container.setText(data.getPayload().toString());
+    }
+
+    int size = 0;
+    try {
+      if (container == null)
+        container = BinaryLif.toContainer(data);
+      size = container.getViews().size();
+      container = run(container, null);
+    } catch (StageException e) {
+      return new Data<String>(Uri.ERROR, e.getMessage());
+    }
+    if (binary)
+      return BinaryLif.asData(container);
+
+    // Step #7: Create a DataContainer with the result, its typed features written as strings
+    TypedFeatures.flush(container);
+    if (Delta.isRequested(data))
+      return Delta.of(container, size, Delta.version(input));
+    return new DataContainer(container);
+  }
+
+  /**
+   * run the service in-process on a container; the container may be modified in place
+   *
+   * @param container
+   *          container holding the text and the views of previous stages
+   * @return the container with the views of this service added
+   * @throws StageException
+   *           if the container can not be processed
+   */
+  public abstract Container execute(Container container);
+
+  /**
+   * same as execute(Container), through the interceptor if one is installed
+   *
+   * @param container
+   *          container holding the text and the views of previous stages
+   * @param document
+   *          id of the document the container holds, or null
+   * @return the container with the views of this service added
+   * @throws StageException
+   *           if the container can not be processed
+   */
+  public Container run(Container container, String document) {
+    StageInterceptor current = interceptor;
+    if (current == null)
+      return execute(container);
+    return current.execute(this, container, document);
+  }
+
+  /**
+   * @return the interceptor wrapping the in-process runs of every stage, or null for none
+   */
+  public static StageInterceptor getInterceptor() {
+    return interceptor;
+  }
+
+  /**
+   * @param interceptor
+   *          wraps the in-process runs of every stage from now on, or null for none. There is one
+   *          interceptor for all pipelines of the process, so one installed for a while should
+   *          chain to the one of getInterceptor() and put it back when done
+   */
+  public static void setInterceptor(StageInterceptor interceptor) {
+    ContainerService.interceptor = interceptor;
+  }
+
+  /**
+   * @return annotation type of the view this service adds, under which the view is found in a
+   *         ViewIndex together with the class name of the service as producer
+   */
+  public abstract String getProducedType();
+
+  /**
+   * @return everything the output of the service depends on besides its input, as part of the key
+   *         of the output in a StageCache; null if the output can not be cached. By default the
+   *         class name, which a service with parameters extends with them
+   */
+  public String getConfiguration() {
+    return getClass().getName();
+  }
+
+  /**
+   * @param container
+   *          container holding the views of previous stages
+   * @return whether the container already holds the view this service adds, so that running the
+   *         service again can be skipped
+   */
+  public boolean isDone(Container container) {
+    return new ViewIndex(container).find(getProducedType(), getClass().getName()) != null;
+  }
+
+  /**
+   * add a view holding copies of the annotations of an earlier view, their typed features
+   * included, for a service revising the annotations of a previous stage. The copy takes the
+   * provenance of the view, but not the Stats.NAME and Stats.CONFSCORE of single annotations, which
+   * would win over the provenance the revising stage records for its view
+   *
+   * @param container
+   *          container the view is added to
+   * @param source
+   *          view whose annotations are copied
+   * @return the new view
+   */
+  protected static View copyView(Container container, View source) {
+    View view = container.newView();
+    for (Annotation ann : source.getAnnotations()) {
+      Annotation copy = new Annotation();
+      copy.setId(ann.getId());
+      copy.setAtType(ann.getAtType());
+      copy.setLabel(ann.getLabel());
+      copy.setStart(ann.getStart());
+      copy.setEnd(ann.getEnd());
+      copy.setFeatures(new LinkedHashMap<>(ann.getFeatures()));
+      copy.getFeatures().remove(Stats.NAME);
+      copy.getFeatures().remove(Stats.CONFSCORE);
+      view.addAnnotation(copy);
+    }
+    TypedFeatures.copy(source, view);
+    Provenance.copy(source, view);
+    return view;
+  }
+
+  /**
+   * @param discriminator
+   *          discriminator of the input data
+   * @return whether the service takes this kind of input; by default only LIF is accepted
+   */
+  protected boolean accepts(String discriminator) {
+    return discriminator.equals(Uri.LAPPS);
+  }
+}
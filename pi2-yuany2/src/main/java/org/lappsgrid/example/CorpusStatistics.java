@@ -0,0 +1,169 @@
+package org.lappsgrid.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ngram document frequencies collected over earlier runs, taking every answer as a document. The
+ * statistics file is memory-mapped and only read with absolute gets, so one instance is shared by
+ * all scoring threads without locks. The file holds a 32 byte header (magic, version, number of
+ * documents, total length, number of ngrams, number of document ids) followed by the sorted ngram
+ * keys, their frequencies and the sorted ids of the documents counted, so that a document is only
+ * counted once however often it is run. Version 1 files, without document ids, are read too
+ *
+ * @author yuany
+ *
+ */
+public class CorpusStatistics implements TermStatistics {
+
+  static final int MAGIC = 0x50324446; // "P2DF"
+
+  static final int VERSION = 2;
+
+  static final int HEADER = 32;
+
+  private ByteBuffer buffer;
+
+  private long documents;
+
+  private long totalLength;
+
+  private int size;
+
+  private int ids;
+
+  private CorpusStatistics(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.capacity() == 0)
+      return;
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION)
+      throw new IllegalArgumentException("Not a version 1 to " + VERSION + " statistics file");
+    documents = buffer.getLong(8);
+    totalLength = buffer.getLong(16);
+    size = buffer.getInt(24);
+    // the last int of the header was padding in version 1
+    ids = buffer.getInt(4) == 1 ? 0 : buffer.getInt(28);
+  }
+
+  /**
+   * @param filePath
+   *          statistics file written by CorpusStatisticsBuilder
+   * @return the statistics in the file, or empty statistics if there is no file yet
+   * @throws IOException
+   *           if the file can not be mapped
+   */
+  public static CorpusStatistics open(String filePath) throws IOException {
+    if (!new File(filePath).exists())
+      return new CorpusStatistics(ByteBuffer.allocate(0));
+    try (FileChannel channel = FileChannel.open(new File(filePath).toPath(),
+            StandardOpenOption.READ)) {
+      return new CorpusStatistics(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  @Override
+  public int documentCount() {
+    return (int) Math.min(documents, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int documentFrequency(long term) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long key = key(mid);
+      if (key < term)
+        low = mid + 1;
+      else if (key > term)
+        high = mid - 1;
+      else
+        return frequency(mid);
+    }
+    return 0;
+  }
+
+  @Override
+  public double averageLength() {
+    return documents == 0 ? 0 : (double) totalLength / documents;
+  }
+
+  /**
+   * @return number of documents, not capped like documentCount()
+   */
+  public long totalDocuments() {
+    return documents;
+  }
+
+  /**
+   * @return total number of ngrams in all documents, counting repeats
+   */
+  public long totalLength() {
+    return totalLength;
+  }
+
+  /**
+   * @return number of distinct ngrams
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param id
+   *          id of a document, made by CorpusStatisticsBuilder.documentId(long, int)
+   * @return whether the document has been counted
+   */
+  public boolean hasDocument(long id) {
+    int low = 0;
+    int high = ids - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long key = documentId(mid);
+      if (key < id)
+        low = mid + 1;
+      else if (key > id)
+        high = mid - 1;
+      else
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return number of document ids, 0 for a version 1 file
+   */
+  int documentIds() {
+    return ids;
+  }
+
+  /**
+   * @param i
+   *          position between 0 and documentIds()
+   * @return the i-th smallest document id
+   */
+  long documentId(int i) {
+    return buffer.getLong(HEADER + 12 * size + 8 * i);
+  }
+
+  /**
+   * @param i
+   *          position between 0 and size()
+   * @return the i-th smallest ngram key
+   */
+  long key(int i) {
+    return buffer.getLong(HEADER + 8 * i);
+  }
+
+  /**
+   * @param i
+   *          position between 0 and size()
+   * @return document frequency of the i-th ngram
+   */
+  int frequency(int i) {
+    return buffer.getInt(HEADER + 8 * size + 4 * i);
+  }
+}
@@ -0,0 +1,165 @@
+package org.lappsgrid.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * accumulates ngram document frequencies while a batch is scored, and merges them with the
+ * statistics of earlier runs into a new statistics file. Documents can be added from several
+ * threads: the counts are split over independently locked stripes. A document is identified by the
+ * hash of the text it comes from and its position there, and one counted before, in this run or an
+ * earlier one, is not counted again, so that running a corpus again leaves its statistics as they
+ * are
+ *
+ * @author yuany
+ *
+ */
+public class CorpusStatisticsBuilder {
+
+  private static final int STRIPES = 64;
+
+  private LongIntHashMap[] stripes = new LongIntHashMap[STRIPES];
+
+  private LongAdder documents = new LongAdder();
+
+  private LongAdder totalLength = new LongAdder();
+
+  /**
+   * statistics of the earlier runs, or null
+   */
+  private CorpusStatistics base;
+
+  /**
+   * ids of the documents counted here
+   */
+  private Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+  public CorpusStatisticsBuilder() {
+    this(null);
+  }
+
+  /**
+   * @param base
+   *          statistics of the earlier runs, whose documents are not counted again, or null
+   */
+  public CorpusStatisticsBuilder(CorpusStatistics base) {
+    this.base = base;
+    for (int i = 0; i < STRIPES; i++)
+      stripes[i] = new LongIntHashMap();
+  }
+
+  /**
+   * @param text
+   *          text holding documents, e.g. the text of a container
+   * @return hash of the text: the first 64 bits of its SHA-256
+   */
+  public static long hash(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+              .digest(text.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM provides SHA-256
+    }
+  }
+
+  /**
+   * @param text
+   *          hash of the text holding the document
+   * @param index
+   *          position of the document in the text, e.g. of an answer among the annotations
+   * @return id of the document
+   */
+  public static long documentId(long text, int index) {
+    return text ^ (index * 0x9E3779B97F4A7C15L);
+  }
+
+  /**
+   * count one document, unless it has been counted before
+   *
+   * @param id
+   *          id of the document, see documentId(long, int)
+   * @param vector
+   *          ngram frequencies of the document
+   * @return whether the document was counted
+   */
+  public boolean addDocument(long id, TermVector vector) {
+    if ((base != null && base.hasDocument(id)) || !ids.add(id))
+      return false;
+    for (int i = 0; i < vector.size(); i++) {
+      long term = vector.term(i);
+      LongIntHashMap stripe = stripes[(int) (term >>> 58)];
+      synchronized (stripe) {
+        stripe.put(term, Math.max(stripe.get(term), 0) + 1);
+      }
+    }
+    documents.increment();
+    totalLength.add(vector.length());
+    return true;
+  }
+
+  /**
+   * write the statistics of the earlier runs plus the documents added here. The file is written
+   * next to the target and then moved over it, so readers never see a partial file
+   *
+   * @param filePath
+   *          statistics file to be written
+   * @param base
+   *          statistics of the earlier runs, possibly mapped from the same file
+   * @throws IOException
+   *           if the file can not be written
+   */
+  public void write(String filePath, CorpusStatistics base) throws IOException {
+    LongIntHashMap merged = new LongIntHashMap(base.size());
+    for (int i = 0; i < base.size(); i++)
+      merged.put(base.key(i), base.frequency(i));
+    for (LongIntHashMap stripe : stripes) {
+      synchronized (stripe) {
+        for (long term : stripe.keys())
+          merged.put(term, Math.max(merged.get(term), 0) + stripe.get(term));
+      }
+    }
+    long[] keys = merged.keys();
+    Arrays.sort(keys);
+    long[] documentIds = new long[base.documentIds() + ids.size()];
+    for (int i = 0; i < base.documentIds(); i++)
+      documentIds[i] = base.documentId(i);
+    int next = base.documentIds();
+    for (long id : ids)
+      documentIds[next++] = id;
+    Arrays.sort(documentIds);
+
+    File target = new File(filePath).getAbsoluteFile();
+    File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+    try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+      out.writeInt(CorpusStatistics.MAGIC);
+      out.writeInt(CorpusStatistics.VERSION);
+      out.writeLong(base.totalDocuments() + documents.sum());
+      out.writeLong(base.totalLength() + totalLength.sum());
+      out.writeInt(keys.length);
+      out.writeInt(documentIds.length);
+      for (long key : keys)
+        out.writeLong(key);
+      for (long key : keys)
+        out.writeInt(merged.get(key));
+      for (long id : documentIds)
+        out.writeLong(id);
+    }
+    Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,138 @@
+package org.lappsgrid.example;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * the view-append protocol. A request with the Data parameter PARAMETER set to true is answered
+ * with only what the service changed: the views it appended, the earlier views it modified, the
+ * number of views of the request and the version of the request, the SHA-256 of its JSON. The
+ * caller, which still holds the document it sent, merges the delta into it with apply()
+ *
+ * @author yuany
+ *
+ */
+public class Delta {
+
+  /**
+   * discriminator of a delta response
+   */
+  public static final String FORMAT = "http://vocab.lappsgrid.org/ns/media/jsonld#lif-delta";
+
+  /**
+   * name of the Data parameter asking for a delta response
+   */
+  public static final String PARAMETER = "delta";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+  private Delta() {
+  }
+
+  /**
+   * @param request
+   *          parsed request
+   * @return whether the request asks for a delta response
+   */
+  public static boolean isRequested(Data<?> request) {
+    Object delta = request.getParameter(PARAMETER);
+    return delta != null && Boolean.parseBoolean(delta.toString());
+  }
+
+  /**
+   * @param json
+   *          JSON of a document as it was sent
+   * @return version of the document: the hex SHA-256 of its JSON
+   */
+  public static String version(String json) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+              .digest(json.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest)
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM provides SHA-256
+    }
+  }
+
+  /**
+   * @param container
+   *          container after the service ran, its typed features flushed
+   * @param size
+   *          number of views of the request
+   * @param base
+   *          version of the request
+   * @return the delta response
+   */
+  public static Data<Map<String, Object>> of(Container container, int size, String base) {
+    List<View> views = container.getViews();
+    Map<String, Object> replaced = new LinkedHashMap<>();
+    for (int i = 0; i < size && i < views.size(); i++) {
+      View view = views.get(i);
+      // only a lazy view knows the JSON it was read from; any other view is sent again
+      if (!(view instanceof LazyView) || ((LazyView) view).isModified())
+        replaced.put(Integer.toString(i), view);
+    }
+    Map<String, Object> payload = new LinkedHashMap<>();
+    payload.put("base", base);
+    payload.put("size", size);
+    payload.put("replaced", replaced);
+    payload.put("views", new ArrayList<>(views.subList(Math.min(size, views.size()), views.size())));
+    return new Data<Map<String, Object>>(FORMAT, payload);
+  }
+
+  /**
+   * merge a delta response into the document the request was made of
+   *
+   * @param base
+   *          container the request was made of
+   * @param version
+   *          version of the request
+   * @param response
+   *          parsed response
+   * @return the container with the delta merged, or null if the response is not a delta
+   * @throws StageException
+   *           if the delta was made of another document
+   */
+  @SuppressWarnings("rawtypes")
+  public static Container apply(Container base, String version, Data<?> response) {
+    if (!FORMAT.equals(response.getDiscriminator()))
+      return null;
+    Map payload = (Map) response.getPayload();
+    Object size = payload.get("size");
+    if (!version.equals(payload.get("base")) || !(size instanceof Number)
+            || ((Number) size).intValue() != base.getViews().size())
+      throw new StageException("Delta was made of another version of the document");
+
+    List<View> views = base.getViews();
+    Object replaced = payload.get("replaced");
+    if (replaced instanceof Map) {
+      for (Object entry : ((Map) replaced).entrySet()) {
+        Map.Entry e = (Map.Entry) entry;
+        views.set(Integer.parseInt(e.getKey().toString()), MAPPER.convertValue(e.getValue(),
+                View.class));
+      }
+    }
+    Object appended = payload.get("views");
+    if (appended instanceof List) {
+      for (Object view : (List) appended)
+        base.addView(MAPPER.convertValue(view, View.class));
+    }
+    return base;
+  }
+}
@@ -1,11 +1,8 @@
 package org.lappsgrid.example;
 
-import org.lappsgrid.api.ProcessingService;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.example.Preprocessor.Stats;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.DataContainer;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
@@ -13,26 +10,64 @@ import org.lappsgrid.serialization.lif.View;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Last step in PI2. Takes the first view and sort the annotations w.r.t their scores and compute
- * the P(at)N
+ * Last step in PI2. Takes the view of the scorer and ranks the answers w.r.t their scores, then computes
+ * the P(at)N and the other ranking metrics
  * 
  * @author yuany
  *
  */
-public class Evaluator implements ProcessingService {
+public class Evaluator extends ContainerService {
+
+  /**
+   * cutoffs of the precision@k metrics
+   */
+  public static final int[] CUTOFFS = { 1, 3, 5, 10 };
+
+  /**
+   * metadata key of the ranking metrics of the ranked view
+   */
+  public static final String METRICS = "pi2metrics";
+
+  /**
+   * names of the ranking metrics besides P@k; mean AP and mean RR over the documents are MAP and
+   * MRR
+   */
+  public static final String PRECISION_AT_N = "P@N";
+
+  public static final String AVERAGE_PRECISION = "AP";
+
+  public static final String RECIPROCAL_RANK = "RR";
+
+  public static final String NDCG = "NDCG";
 
   /**
    * storing the metadata
    */
   private String metadata;
 
+  /**
+   * number of answers ranked by score
+   */
+  private int depth;
+
   public Evaluator() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param depth
+   *          number of answers ranked by score, with a bounded heap; the others follow them in
+   *          document order. At least the correct answers and the largest cutoff are ranked
+   */
+  public Evaluator(int depth) {
     metadata = generateMetadata();
+    this.depth = depth;
   }
 
   /**
@@ -71,7 +106,7 @@ public class Evaluator implements ProcessingService {
 
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
-    return data.asPrettyJson();
+    return data.asJson();
   }
 
   @Override
@@ -84,64 +119,216 @@ public class Evaluator implements ProcessingService {
 
   @Override
   /**
-   * Take a LIF which contains 4 views from previous step, and sort the first view w.r.t the score
-   * it contains
+   * @return type of the annotations of the view added by this step
+   */
+  public String getProducedType() {
+    return Uri.SENTENCE;
+  }
+
+  @Override
+  /**
+   * @return the class name and the parameters of this step
+   */
+  public String getConfiguration() {
+    return getClass().getName() + ":depth=" + depth;
+  }
+
+  @Override
+  /**
+   * Take a LIF which contains 4 views from previous step, rank the answers of the view of the scorer
+   * w.r.t the score it contains in a new view and compute the ranking metrics of the ranked answers
    * 
-   * @param input
-   *          LIF JSON string
+   * @param container
+   *          container holding the views of previous steps
    * 
-   * @return LIF JSOn string
-   */
-  public String execute(String input) {
-    // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
-    // Step #2: Check the discriminator
-    final String discriminator = data.getDiscriminator();
-    if (discriminator.equals(Uri.ERROR)) {
-      // Return the input unchanged.
-      return input;
+   * @return the container with the new view added
+   */
+  public Container execute(Container container) {
+    // the answers are ranked in a copy of the view of the scorer
+    View qaView = copyView(container,
+            new ViewIndex(container).require(Uri.SENTENCE, Scorer.class.getName()));
+    qaView.addContains(Uri.SENTENCE, this.getClass().getName(), "ranked");
+    List<Annotation> annotations = qaView.getAnnotations();
+    int size = annotations.size();
+    if (size == 0)
+      return container;
+    // read the labels and scores once instead of parsing them on every comparison
+    int[] labels = TypedFeatures.ints(qaView, Stats.STATS1);
+    double[] scores = TypedFeatures.doubles(qaView, Stats.STATS2);
+    int N = 0;
+    int n = 0;
+    for (int label : labels) {
+      N = label == 1 ? N + 1 : N;
+    }
+
+    // rank the answers (the question is annotation 0) down to the depth; at least the correct
+    // answers and the largest cutoff are ranked, so that P@N and P@k are exact
+    int k = Math.min(size - 1, Math.max(depth, Math.max(N, CUTOFFS[CUTOFFS.length - 1])));
+    int[] top = topK(scores, 1, size, k);
+    // the ranked answers come first, then the others in document order, then the question
+    int[] order = new int[size];
+    boolean[] ranked = new boolean[size];
+    for (int i = 0; i < k; i++) {
+      order[i] = top[i];
+      ranked[top[i]] = true;
     }
-    // Step #3: Extract the text.
-    Container container = null;
-    if (discriminator.equals(Uri.LAPPS)) {
-      container = new Container((Map) data.getPayload());
-    } else {
-      // This is a format we don't accept.
-      String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
+    for (int i = 1, next = k; i < size; i++) {
+      if (!ranked[i])
+        order[next++] = i;
     }
+    order[size - 1] = 0;
 
-    View qaView = container.getView(3);
-    int N = 0;
-    int n = 0;
-    for (Annotation ann : qaView.getAnnotations()) {
-      N = ann.getFeature(Stats.STATS1).equals("1") ? N + 1 : N;
+    List<Annotation> sorted = new ArrayList<>(size);
+    for (int i : order)
+      sorted.add(annotations.get(i));
+    annotations.clear();
+    annotations.addAll(sorted);
+    TypedFeatures.permute(qaView, order);
+
+    // here we store precision@N in stats2 feature of the question
+    int[] rankedLabels = new int[k];
+    for (int i = 0; i < k; i++) {
+      rankedLabels[i] = labels[top[i]];
+      if (i < N) {
+        // the top N answers are ranked by this step; the others keep the provenance of the scorer
+        Provenance.set(qaView, i, this.getClass().getName(), 1);
+        n = rankedLabels[i] == 1 ? n + 1 : n;
+      }
     }
-    List<Annotation> annotations = qaView.getAnnotations();
-    annotations.sort(new Comparator<Annotation>() {
-      @Override
-      public int compare(Annotation o1, Annotation o2) {
-        double left = Double.parseDouble(o1.getFeature(Stats.STATS2));
-        double right = Double.parseDouble(o2.getFeature(Stats.STATS2));
-        return left < right ? 1 : left == right ? 0 : -1;
+    TypedFeatures.setDouble(qaView, size - 1, Stats.STATS2, ((double) n) / N);
+    qaView.addMetaData(METRICS, metrics(rankedLabels, N));
+
+    return container;
+  }
+
+  /**
+   * compute the ranking metrics in one pass over the ranked answers: P@N, P@k for each cutoff, AP,
+   * RR and NDCG, the last three cut off at the ranked answers. The metrics which need a correct
+   * answer are left out when there is none
+   * 
+   * @param ranked
+   *          label of each ranked answer, 1 if it is correct
+   * @param relevant
+   *          number of correct answers
+   * @return the metrics by name
+   */
+  static Map<String, Double> metrics(int[] ranked, int relevant) {
+    Map<String, Double> metrics = new LinkedHashMap<>();
+    int hits = 0;
+    double precisions = 0;
+    double rr = 0;
+    double dcg = 0;
+    double idcg = 0;
+    int[] cutoffHits = new int[CUTOFFS.length];
+    for (int i = 0; i < ranked.length; i++) {
+      double discount = 1 / (Math.log(i + 2) / Math.log(2));
+      if (ranked[i] == 1) {
+        for (int c = 0; c < CUTOFFS.length; c++)
+          cutoffHits[c] = i < CUTOFFS[c] ? cutoffHits[c] + 1 : cutoffHits[c];
+        hits++;
+        precisions += ((double) hits) / (i + 1);
+        rr = rr == 0 ? 1.0 / (i + 1) : rr;
+        dcg += discount;
+      }
+      if (i < relevant)
+        idcg += discount;
+      if (i + 1 == relevant)
+        metrics.put(PRECISION_AT_N, ((double) hits) / relevant);
+    }
+    // fewer answers than a cutoff count as wrong ones
+    for (int c = 0; c < CUTOFFS.length; c++)
+      metrics.put("P@" + CUTOFFS[c], ((double) cutoffHits[c]) / CUTOFFS[c]);
+    if (relevant > 0) {
+      metrics.putIfAbsent(PRECISION_AT_N, ((double) hits) / relevant);
+      metrics.put(AVERAGE_PRECISION, precisions / relevant);
+      metrics.put(RECIPROCAL_RANK, rr);
+      metrics.put(NDCG, dcg / idcg);
+    }
+    return metrics;
+  }
+
+  /**
+   * @param qaView
+   *          view ranked by Evaluator, possibly read from LIF
+   * @return the ranking metrics of the view by name, empty if it has none
+   */
+  public static Map<String, Double> metrics(View qaView) {
+    Map<String, Double> metrics = new LinkedHashMap<>();
+    Object stored = qaView.getMetadata().get(METRICS);
+    if (stored instanceof Map) {
+      for (Map.Entry<?, ?> metric : ((Map<?, ?>) stored).entrySet()) {
+        if (metric.getValue() instanceof Number)
+          metrics.put(metric.getKey().toString(), ((Number) metric.getValue()).doubleValue());
       }
+    }
+    return metrics;
+  }
 
-    });
+  /**
+   * select the k best scoring positions in [from, to) with a bounded heap of positions, whose root
+   * is the worst position kept
+   * 
+   * @param scores
+   *          score of each annotation
+   * @param from
+   *          first position
+   * @param to
+   *          end of the positions
+   * @param k
+   *          number of positions to select, at most to - from
+   * @return the selected positions by descending score, ties in position order
+   */
+  static int[] topK(double[] scores, int from, int to, int k) {
+    int[] heap = new int[k];
+    int size = 0;
+    for (int i = from; i < to && k > 0; i++) {
+      if (size < k) {
+        // sift up: a parent is never better than its children
+        int child = size++;
+        heap[child] = i;
+        while (child > 0 && better(heap[(child - 1) / 2], heap[child], scores)) {
+          swap(heap, child, (child - 1) / 2);
+          child = (child - 1) / 2;
+        }
+      } else if (better(i, heap[0], scores)) {
+        heap[0] = i;
+        siftDown(heap, size, scores);
+      }
+    }
+    // move the worst position to the back until the heap is sorted best first
+    for (int last = size - 1; last > 0; last--) {
+      swap(heap, 0, last);
+      siftDown(heap, last, scores);
+    }
+    return heap;
+  }
 
-    // previous pipeline give question minimum score so it should appear at the end
-    // here we store precision@N in stats2 feature
-    for (int i = 0; i < N; i++) {
-      Annotation ann = annotations.get(i);
-      ann.addFeature(Stats.NAME, this.getClass().getName());
-      ann.addFeature(Stats.CONFSCORE, "1");
-      n = ann.getFeature(Stats.STATS1).equals("1") ? n + 1 : n;
+  /**
+   * sift the root of the heap down to its place
+   */
+  private static void siftDown(int[] heap, int size, double[] scores) {
+    int parent = 0;
+    while (2 * parent + 1 < size) {
+      int child = 2 * parent + 1;
+      if (child + 1 < size && better(heap[child], heap[child + 1], scores))
+        child++;
+      if (!better(heap[parent], heap[child], scores))
+        return;
+      swap(heap, parent, child);
+      parent = child;
     }
-    annotations.get(annotations.size() - 1).addFeature(Stats.STATS2, (((double) n) / N) + "");
-    // a hack for in-place modification (which is not working)
-    container.addView(qaView);
+  }
+
+  /**
+   * @return whether position a ranks before position b: it scores higher, or ties and comes first
+   */
+  private static boolean better(int a, int b, double[] scores) {
+    return scores[a] > scores[b] || (!(scores[b] > scores[a]) && a < b);
+  }
 
-    data = new DataContainer(container);
-    // Step #8: Serialize the data object and return the JSON.
-    return data.asPrettyJson();
+  private static void swap(int[] heap, int i, int j) {
+    int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
   }
-}
\ No newline at end of file
+}
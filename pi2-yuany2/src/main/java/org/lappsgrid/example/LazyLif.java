@@ -0,0 +1,178 @@
+package org.lappsgrid.example;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Container;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * reads a Data object with Jackson's streaming parser. A LIF payload becomes a Container whose
+ * text and metadata are read at once, while each view is only located and its id read: the views
+ * are LazyViews, parsed when a stage first touches them and written back verbatim otherwise. The
+ * cost of reading a document thus grows with the views a stage uses, not with the whole document
+ *
+ * @author yuany
+ *
+ */
+public class LazyLif {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+  private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+  private LazyLif() {
+  }
+
+  /**
+   * @param json
+   *          JSON of a Data object
+   * @return the Data object; its payload is a Container with lazy views if the discriminator is
+   *         LIF, and the plain parsed payload otherwise
+   * @throws StageException
+   *           if the JSON can not be read
+   */
+  public static Data<Object> read(String json) {
+    try (JsonParser parser = FACTORY.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT)
+        throw new StageException("Data object expected");
+      String discriminator = null;
+      Map<?, ?> parameters = null;
+      Object payload = null;
+      int payloadStart = -1;
+      int payloadEnd = -1;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if (name.equals("discriminator")) {
+          discriminator = parser.getValueAsString();
+        } else if (name.equals("parameters")) {
+          parameters = token == JsonToken.VALUE_NULL ? null : MAPPER.readValue(parser, Map.class);
+        } else if (!name.equals("payload")) {
+          parser.skipChildren();
+        } else if (token == JsonToken.START_OBJECT && isLif(discriminator)) {
+          payload = readContainer(parser, json, 0);
+        } else if (token == JsonToken.START_OBJECT) {
+          // the discriminator may still follow, so only locate the payload for now
+          payloadStart = offset(parser.getTokenLocation().getCharOffset());
+          parser.skipChildren();
+          payloadEnd = offset(parser.getCurrentLocation().getCharOffset());
+        } else {
+          payload = MAPPER.readValue(parser, Object.class);
+        }
+      }
+
+      if (payloadStart >= 0) {
+        String object = json.substring(payloadStart, payloadEnd);
+        if (isLif(discriminator)) {
+          try (JsonParser payloadParser = FACTORY.createParser(object)) {
+            payloadParser.nextToken();
+            payload = readContainer(payloadParser, json, payloadStart);
+          }
+        } else {
+          payload = MAPPER.readValue(object, Object.class);
+        }
+      }
+
+      Data<Object> data = new Data<Object>(discriminator, payload);
+      if (parameters != null) {
+        for (Map.Entry<?, ?> parameter : parameters.entrySet())
+          data.setParameter(String.valueOf(parameter.getKey()), parameter.getValue());
+      }
+      return data;
+    } catch (IOException e) {
+      throw new StageException("Unable to read LIF: " + e.getMessage());
+    }
+  }
+
+  private static boolean isLif(String discriminator) {
+    return Uri.LAPPS.equals(discriminator) || Uri.LIF.equals(discriminator);
+  }
+
+  /**
+   * read the container object the parser is at
+   *
+   * @param parser
+   *          parser at the start of the container object
+   * @param json
+   *          the whole document, kept by the views
+   * @param base
+   *          offset in the document of the text the parser reads
+   * @return the container with lazy views
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Container readContainer(JsonParser parser, String json, int base)
+          throws IOException {
+    Container container = new Container();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if (name.equals("text")) {
+        Object text = MAPPER.readValue(parser, Object.class);
+        if (text instanceof Map) {
+          Object value = ((Map) text).get("@value");
+          Object language = ((Map) text).get("@language");
+          if (value != null)
+            container.setText(value.toString());
+          if (language != null)
+            container.setLanguage(language.toString());
+        } else if (text != null) {
+          container.setText(text.toString());
+        }
+      } else if (name.equals("metadata") && token == JsonToken.START_OBJECT) {
+        container.setMetadata(MAPPER.readValue(parser, Map.class));
+      } else if (name.equals("views") && token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_OBJECT)
+          container.addView(locateView(parser, json, base));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return container;
+  }
+
+  /**
+   * read the id and the contains metadata of the view object the parser is at, so that the view
+   * can be indexed, and skip the rest of it
+   */
+  @SuppressWarnings("unchecked")
+  private static LazyView locateView(JsonParser parser, String json, int base)
+          throws IOException {
+    int start = offset(parser.getTokenLocation().getCharOffset());
+    String id = null;
+    Map<String, Object> contains = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if (name.equals("id")) {
+        id = parser.getValueAsString();
+      } else if (name.equals("metadata") && token == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String key = parser.getCurrentName();
+          if (parser.nextToken() == JsonToken.START_OBJECT && key.equals("contains"))
+            contains = MAPPER.readValue(parser, Map.class);
+          else
+            parser.skipChildren();
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    int end = offset(parser.getCurrentLocation().getCharOffset());
+    return new LazyView(id, json, base + start, end - start, contains);
+  }
+
+  private static int offset(long charOffset) {
+    if (charOffset < 0 || charOffset > Integer.MAX_VALUE)
+      throw new StageException("Unable to locate a view in the LIF document");
+    return (int) charOffset;
+  }
+}
@@ -0,0 +1,248 @@
+package org.lappsgrid.example;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Contains;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * a view read by LazyLif which keeps its JSON and only parses it when its metadata or annotations
+ * are first asked for. A view which has never been parsed is written back as the JSON it was read
+ * from, and a parsed one can tell whether it has been changed since. Subclasses keep a view
+ * elsewhere than in JSON by overriding parse()
+ *
+ * @author yuany
+ *
+ */
+@JsonSerialize(using = LazyView.RawSerializer.class)
+public class LazyView extends View {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+          .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+  /**
+   * the document the view was read from
+   */
+  private String json;
+
+  private int offset;
+
+  private int length;
+
+  /**
+   * set once the view has been parsed, last, so that a reader which sees it set also sees the
+   * parsed metadata and annotations
+   */
+  private volatile boolean materialized = false;
+
+  /**
+   * set while the view is being parsed, for the calls parsing makes back into the view
+   */
+  private boolean parsing = false;
+
+  /**
+   * the contains metadata as it was read when the view was located, or null
+   */
+  private Map<String, Object> contains;
+
+  /**
+   * @param id
+   *          id of the view
+   * @param json
+   *          the document the view was read from
+   * @param offset
+   *          offset of the view object in the document
+   * @param length
+   *          length of the view object
+   * @param contains
+   *          the contains metadata of the view, or null
+   */
+  public LazyView(String id, String json, int offset, int length, Map<String, Object> contains) {
+    super.setId(id);
+    this.json = json;
+    this.offset = offset;
+    this.length = length;
+    this.contains = contains;
+  }
+
+  /**
+   * for a view which is read from elsewhere than a JSON document, by overriding parse()
+   *
+   * @param id
+   *          id of the view
+   * @param contains
+   *          the contains metadata of the view, or null
+   */
+  protected LazyView(String id, Map<String, Object> contains) {
+    super.setId(id);
+    this.contains = contains;
+  }
+
+  /**
+   * @return whether the JSON of the view has been parsed
+   */
+  public boolean isMaterialized() {
+    return materialized;
+  }
+
+  /**
+   * @return the contains metadata of the view, which is read without parsing the view if it has
+   *         not been parsed yet; null if there is none
+   */
+  public Object peekContains() {
+    return materialized ? super.getMetadata("contains") : contains;
+  }
+
+  /**
+   * parse the JSON of the view, once; stages running in parallel may share the view. A view whose
+   * JSON can not be parsed stays unparsed, so that the next reader fails as well
+   */
+  private void materialize() {
+    if (materialized)
+      return;
+    synchronized (this) {
+      if (materialized || parsing)
+        return;
+      parsing = true;
+      try {
+        View view = parse();
+        super.setMetadata(view.getMetadata());
+        super.setAnnotations(view.getAnnotations());
+        materialized = true;
+      } finally {
+        parsing = false;
+      }
+    }
+  }
+
+  /**
+   * @return the view read from where it is kept, by default the JSON it was located in
+   */
+  protected View parse() {
+    return Serializer.parse(json.substring(offset, offset + length), View.class);
+  }
+
+  /**
+   * @return whether the view differs from the JSON it was read from; false if it was never parsed,
+   *         true if it was parsed but not read from JSON
+   */
+  public boolean isModified() {
+    if (!materialized)
+      return false;
+    if (json == null)
+      return true;
+    try {
+      String original = MAPPER.readTree(json.substring(offset, offset + length)).toString();
+      return !original.equals(MAPPER.writeValueAsString(this));
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  @Override
+  /**
+   * a renamed view is parsed first, so that it is not written back as the JSON of its old id
+   */
+  public void setId(String id) {
+    materialize();
+    super.setId(id);
+  }
+
+  @Override
+  public Map<String, Object> getMetadata() {
+    materialize();
+    return super.getMetadata();
+  }
+
+  @Override
+  public void setMetadata(Map<String, Object> metadata) {
+    materialize();
+    super.setMetadata(metadata);
+  }
+
+  @Override
+  public void addMetaData(String key, Object value) {
+    materialize();
+    super.addMetaData(key, value);
+  }
+
+  @Override
+  public Object getMetadata(String key) {
+    materialize();
+    return super.getMetadata(key);
+  }
+
+  @Override
+  public List<Annotation> getAnnotations() {
+    materialize();
+    return super.getAnnotations();
+  }
+
+  @Override
+  public void setAnnotations(List<Annotation> annotations) {
+    materialize();
+    super.setAnnotations(annotations);
+  }
+
+  @Override
+  public void addAnnotation(Annotation annotation) {
+    materialize();
+    super.addAnnotation(annotation);
+  }
+
+  @Override
+  public Annotation newAnnotation(String id, String type) {
+    materialize();
+    return super.newAnnotation(id, type);
+  }
+
+  @Override
+  public Annotation newAnnotation(String id, String type, long start, long end) {
+    materialize();
+    return super.newAnnotation(id, type, start, end);
+  }
+
+  @Override
+  public Contains addContains(String type, String producer, String tagType) {
+    materialize();
+    return super.addContains(type, producer, tagType);
+  }
+
+  @Override
+  public boolean contains(String type) {
+    materialize();
+    return super.contains(type);
+  }
+
+  @Override
+  public Contains getContains(String type) {
+    materialize();
+    return super.getContains(type);
+  }
+
+  /**
+   * writes an untouched view read from JSON as that JSON, and any other view as a plain View
+   */
+  public static class RawSerializer extends JsonSerializer<LazyView> {
+
+    @Override
+    public void serialize(LazyView view, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+      if (!view.materialized && view.json != null)
+        generator.writeRawValue(view.json, view.offset, view.length);
+      else
+        provider.findValueSerializer(View.class).serialize(view, generator, provider);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.lappsgrid.example;
+
+/**
+ * an open addressing hash map from primitive longs to non-negative ints, used to count ngram
+ * keys without boxing
+ *
+ * @author yuany
+ *
+ */
+public class LongIntHashMap {
+
+  /**
+   * value stored in empty slots and returned for missing keys
+   */
+  public static final int MISSING = -1;
+
+  private long[] keys;
+
+  private int[] values;
+
+  private int size;
+
+  /**
+   * value of the key 0, which can not be told from an empty slot in the table
+   */
+  private int zeroValue = MISSING;
+
+  public LongIntHashMap() {
+    this(16);
+  }
+
+  /**
+   * @param expected
+   *          number of keys expected, used to size the table
+   */
+  public LongIntHashMap(int expected) {
+    int capacity = 16;
+    while (capacity * 3 < expected * 4) // keep the load factor under 0.75
+      capacity <<= 1;
+    keys = new long[capacity];
+    values = new int[capacity];
+  }
+
+  /**
+   * @param key
+   *          key to look for
+   * @return value of the key, or MISSING
+   */
+  public int get(long key) {
+    if (key == 0L)
+      return zeroValue;
+    int mask = keys.length - 1;
+    int i = slot(key, mask);
+    while (keys[i] != 0L) {
+      if (keys[i] == key)
+        return values[i];
+      i = (i + 1) & mask;
+    }
+    return MISSING;
+  }
+
+  /**
+   * @param key
+   *          key to be set
+   * @param value
+   *          non-negative value
+   */
+  public void put(long key, int value) {
+    if (key == 0L) {
+      if (zeroValue == MISSING)
+        size++;
+      zeroValue = value;
+      return;
+    }
+    int mask = keys.length - 1;
+    int i = slot(key, mask);
+    while (keys[i] != 0L) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 4 > keys.length * 3)
+      rehash();
+  }
+
+  /**
+   * @return number of keys in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the keys in the map, in no particular order
+   */
+  public long[] keys() {
+    long[] present = new long[size];
+    int n = 0;
+    if (zeroValue != MISSING)
+      present[n++] = 0L;
+    for (long key : keys) {
+      if (key != 0L)
+        present[n++] = key;
+    }
+    return present;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] == 0L)
+        continue;
+      int i = slot(oldKeys[j], mask);
+      while (keys[i] != 0L)
+        i = (i + 1) & mask;
+      keys[i] = oldKeys[j];
+      values[i] = oldValues[j];
+    }
+  }
+
+  static int slot(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
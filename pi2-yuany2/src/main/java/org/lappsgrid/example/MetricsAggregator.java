@@ -0,0 +1,214 @@
+package org.lappsgrid.example;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.example.Preprocessor.Stats;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * aggregates the evaluation of every question of a batch while the batch runs, so that the corpus
+ * level metrics need no second pass over the outputs. Every accumulator is a LongAdder or a
+ * DoubleAdder, so the tasks of a batch add their questions concurrently without locking
+ *
+ * @author yuany
+ *
+ */
+public class MetricsAggregator {
+
+  /**
+   * sum and count of one metric over the questions having it
+   */
+  private static class Mean {
+    private final DoubleAdder sum = new DoubleAdder();
+
+    private final LongAdder count = new LongAdder();
+
+    private void add(double value) {
+      sum.add(value);
+      count.increment();
+    }
+
+    private double mean() {
+      long n = count.sum();
+      return n == 0 ? Double.NaN : sum.sum() / n;
+    }
+  }
+
+  /**
+   * counts of values in equal bins over [0, 1), plus a bin below and a bin above
+   */
+  private static class Histogram {
+    private final LongAdder[] bins;
+
+    private Histogram(int bins) {
+      this.bins = new LongAdder[bins + 2];
+      for (int i = 0; i < this.bins.length; i++)
+        this.bins[i] = new LongAdder();
+    }
+
+    private void add(double value) {
+      int inner = bins.length - 2;
+      int bin;
+      if (value < 0)
+        bin = 0;
+      else if (value >= 1 || Double.isNaN(value))
+        bin = bins.length - 1;
+      else
+        bin = 1 + Math.min((int) (value * inner), inner - 1);
+      bins[bin].increment();
+    }
+
+    private void print(PrintStream out) {
+      int inner = bins.length - 2;
+      out.printf("  < 0         %d%n", bins[0].sum());
+      for (int i = 0; i < inner; i++)
+        out.printf("  [%.2f,%.2f) %d%n", ((double) i) / inner, ((double) i + 1) / inner,
+                bins[i + 1].sum());
+      out.printf("  >= 1        %d%n", bins[bins.length - 1].sum());
+    }
+  }
+
+  private final LongAdder questions = new LongAdder();
+
+  private final LongAdder skipped = new LongAdder();
+
+  private final LongAdder answers = new LongAdder();
+
+  /**
+   * number of correct answers, the N of P@N, over all questions
+   */
+  private final LongAdder relevant = new LongAdder();
+
+  /**
+   * number of correct answers ranked in the top N, over all questions
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * mean of each ranking metric by name
+   */
+  private final ConcurrentMap<String, Mean> means = new ConcurrentHashMap<>();
+
+  /**
+   * histogram of the P@N of the questions
+   */
+  private final Histogram precisions;
+
+  /**
+   * histogram of the scores of the answers
+   */
+  private final Histogram scores;
+
+  public MetricsAggregator() {
+    this(10);
+  }
+
+  /**
+   * @param bins
+   *          number of bins of the histograms over [0, 1)
+   */
+  public MetricsAggregator(int bins) {
+    precisions = new Histogram(Math.max(1, bins));
+    scores = new Histogram(Math.max(1, bins));
+  }
+
+  /**
+   * add the evaluation of a question; may be called from any thread
+   *
+   * @param container
+   *          output of the pipeline for the question, or null if it failed
+   */
+  public void add(Container container) {
+    View qaView = container == null ? null
+            : new ViewIndex(container).find(Uri.SENTENCE, Evaluator.class.getName());
+    int size = qaView == null ? 0 : qaView.getAnnotations().size();
+    if (size == 0) {
+      skipped.increment();
+      return;
+    }
+    questions.increment();
+
+    // the question is ranked last
+    int[] labels = TypedFeatures.ints(qaView, Stats.STATS1);
+    double[] answerScores = TypedFeatures.doubles(qaView, Stats.STATS2);
+    int N = 0;
+    for (int i = 0; i < size - 1; i++) {
+      N = labels[i] == 1 ? N + 1 : N;
+      scores.add(answerScores[i]);
+    }
+    answers.add(size - 1);
+    relevant.add(N);
+
+    Map<String, Double> metrics = Evaluator.metrics(qaView);
+    for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+      Mean mean = means.get(metric.getKey());
+      if (mean == null) {
+        means.putIfAbsent(metric.getKey(), new Mean());
+        mean = means.get(metric.getKey());
+      }
+      mean.add(metric.getValue());
+    }
+    Double precision = metrics.get(Evaluator.PRECISION_AT_N);
+    if (precision != null) {
+      precisions.add(precision);
+      hits.add(Math.round(precision * N));
+    }
+  }
+
+  /**
+   * @return number of questions evaluated
+   */
+  public long getQuestions() {
+    return questions.sum();
+  }
+
+  /**
+   * @param metric
+   *          name of a ranking metric of Evaluator
+   * @return mean of the metric over the questions having it, NaN if none has
+   */
+  public double macro(String metric) {
+    Mean mean = means.get(metric);
+    return mean == null ? Double.NaN : mean.mean();
+  }
+
+  /**
+   * @return correct answers ranked in the top N over all correct answers, i.e. the P@N of the
+   *         questions weighted by their N
+   */
+  public double microPrecision() {
+    long n = relevant.sum();
+    return n == 0 ? Double.NaN : ((double) hits.sum()) / n;
+  }
+
+  /**
+   * print the summary of the batch
+   *
+   * @param out
+   *          stream to print to
+   */
+  public void report(PrintStream out) {
+    out.printf("evaluated %d questions (%d without evaluation), %d answers, %d correct%n",
+            questions.sum(), skipped.sum(), answers.sum(), relevant.sum());
+    out.printf("P@N   macro %.4f  micro %.4f%n", macro(Evaluator.PRECISION_AT_N),
+            microPrecision());
+    for (int cutoff : Evaluator.CUTOFFS) {
+      String name = "P@" + cutoff;
+      out.printf("%-5s macro %.4f%n", name, macro(name));
+    }
+    out.printf("MAP         %.4f%n", macro(Evaluator.AVERAGE_PRECISION));
+    out.printf("MRR         %.4f%n", macro(Evaluator.RECIPROCAL_RANK));
+    out.printf("NDCG  macro %.4f%n", macro(Evaluator.NDCG));
+    out.println("P@N histogram");
+    precisions.print(out);
+    out.println("answer score histogram");
+    scores.print(out);
+  }
+}
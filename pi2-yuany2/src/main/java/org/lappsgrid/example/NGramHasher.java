@@ -0,0 +1,113 @@
+package org.lappsgrid.example;
+
+import java.util.List;
+
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * turns tokens and n-grams into 64-bit keys. A token is normalized by dropping its non-word
+ * characters, the same as replaceAll("\\W", ""), and hashed straight from the text; an n-gram key
+ * mixes the hashes of its tokens and its length. Keys only depend on the token strings, so they are
+ * comparable across documents and runs
+ *
+ * @author yuany
+ *
+ */
+public class NGramHasher {
+
+  private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  /**
+   * hash of a token without any word character
+   */
+  public static final long EMPTY_TOKEN = mix(FNV_OFFSET);
+
+  private NGramHasher() {
+  }
+
+  /**
+   * build the token dictionary of a document: the hash of every normalized token, indexed like the
+   * token view
+   *
+   * @param text
+   *          original text
+   * @param tokens
+   *          annotations of the token view
+   * @return hash of each token
+   */
+  public static long[] hashTokens(String text, List<Annotation> tokens) {
+    long[] hashes = new long[tokens.size()];
+    int i = 0;
+    for (Annotation token : tokens)
+      hashes[i++] = hashToken(text, token.getStart().intValue(), token.getEnd().intValue());
+    return hashes;
+  }
+
+  /**
+   * same as hashTokens(String, List), reading the offsets through the columns of a columnar view
+   *
+   * @param text
+   *          original text
+   * @param tokenView
+   *          the token view
+   * @return hash of each token
+   */
+  public static long[] hashTokens(String text, View tokenView) {
+    long[] hashes = new long[ColumnarView.size(tokenView)];
+    for (int i = 0; i < hashes.length; i++)
+      hashes[i] = hashToken(text, ColumnarView.start(tokenView, i), ColumnarView.end(tokenView, i));
+    return hashes;
+  }
+
+  /**
+   * @param text
+   *          original text
+   * @param start
+   *          start of the token
+   * @param end
+   *          end of the token
+   * @return hash of the token with its non-word characters dropped
+   */
+  public static long hashToken(CharSequence text, int start, int end) {
+    long h = FNV_OFFSET;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+        h ^= c;
+        h *= FNV_PRIME;
+      }
+    }
+    return mix(h);
+  }
+
+  /**
+   * @param tokenHashes
+   *          the token dictionary of the document
+   * @param first
+   *          index of the first token of the n-gram
+   * @param last
+   *          index of the last token of the n-gram, inclusive
+   * @return key of the n-gram
+   */
+  public static long ngramKey(long[] tokenHashes, int first, int last) {
+    long h = last - first + 1;
+    for (int i = first; i <= last; i++)
+      h = Long.rotateLeft(h, 31) * FNV_PRIME ^ tokenHashes[i];
+    return mix(h);
+  }
+
+  /**
+   * the finalizer of MurmurHash3, spreading every input bit over the key
+   */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB93FE1A85EC5L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -1,20 +1,16 @@
 package org.lappsgrid.example;
 
-import org.lappsgrid.api.ProcessingService;
 import org.lappsgrid.example.Preprocessor.Stats;
 
 import static org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.DataContainer;
-import org.lappsgrid.serialization.Serializer;
-import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 // additional API for metadata
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Third step in PI2. Takes the view of tokenizer and add a new view annotating the 1-, 2- and
@@ -23,18 +19,40 @@ import java.util.Map;
  * @author yuany
  *
  */
-public class NGramMaker implements ProcessingService {
+public class NGramMaker extends ContainerService {
 
   /**
    * storing the metadata
    */
   private String metadata;
 
+  /**
+   * metadata key of the packed ngrams of a view made in compact mode
+   */
+  public static final String PACKED = "pi2ngrams";
+
   private int ngrams;
 
+  /**
+   * whether ngrams are stored as packed ints in the view metadata instead of annotations
+   */
+  private boolean compact;
+
   public NGramMaker(int ngrams) {
+    this(ngrams, false);
+  }
+
+  /**
+   * @param ngrams
+   *          maximum ngram order
+   * @param compact
+   *          store the ngrams as (start, length, segment) int triples under PACKED in the metadata
+   *          of the view, instead of one annotation per ngram
+   */
+  public NGramMaker(int ngrams, boolean compact) {
     metadata = generateMetadata();
     this.ngrams = ngrams;
+    this.compact = compact;
   }
 
   /**
@@ -73,7 +91,7 @@ public class NGramMaker implements ProcessingService {
 
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
-    return data.asPrettyJson();
+    return data.asJson();
   }
 
   @Override
@@ -84,63 +102,102 @@ public class NGramMaker implements ProcessingService {
     return metadata;
   }
 
+  @Override
+  /**
+   * @return type of the annotations of the view added by this step
+   */
+  public String getProducedType() {
+    return Uri.TOKEN;
+  }
+
+  @Override
+  /**
+   * @return the class name and the parameters of this step
+   */
+  public String getConfiguration() {
+    return getClass().getName() + ":ngrams=" + ngrams + ",compact=" + compact;
+  }
+
   @Override
   /**
    * Take the LIF which contains views from previous two steps and annotate the ngrams
    * 
-   * @param input
-   *          LIF JSON string
+   * @param container
+   *          container holding the views of previous steps
    * 
-   * @return LIF JSOn string
+   * @return the container with the new view added
    */
-  public String execute(String input) {
-    // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
-    // Step #2: Check the discriminator
-    final String discriminator = data.getDiscriminator();
-    if (discriminator.equals(Uri.ERROR)) {
-      // Return the input unchanged.
-      return input;
-    }
-    // Step #3: Extract the text.
-    Container container = null;
-    if (discriminator.equals(Uri.LAPPS)) {
-      container = new Container((Map) data.getPayload());
-    } else {
-      // This is a format we don't accept.
-      String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
-    }
-
+  public Container execute(Container container) {
+    // question/answer id of each token of the tokenizer
+    View tokenView = new ViewIndex(container).require(Uri.TOKEN, Tokenizer.class.getName());
+    int[] segments = TypedFeatures.ints(tokenView, Stats.STATS1);
     // Step #4: Create a new View
-    View ngramView = container.newView();
-    List<Annotation> annotations = container.getView(1).getAnnotations(); // annotations of the 2nd
-                                                                          // view
+    // the ngrams are kept as columns, and only become Annotation objects if the view is serialized
+    ColumnarView ngramView = ColumnarView.newView(container, Uri.TOKEN);
+    int length = segments.length;
+    int[] packed = compact ? new int[3 * length * Math.max(ngrams, 0)] : null;
+
+    // slide over the tokens once, emitting every order of ngram starting at each token which
+    // stays inside the question/answer of the token
     int id = 0;
-    int length = annotations.size();
-    for (int i = 1; i < this.ngrams + 1; i++) {
-      for (int j = 0; j < length; j++) {
-        if (j + i - 1 >= length) {
-          continue;
-        }
-        Annotation head = annotations.get(j);
-        Annotation tail = annotations.get(j + i - 1);
-        if (head.getFeature(Stats.STATS1).equals(tail.getFeature(Stats.STATS1))) {
-          // here start and end denote the indices in 2nd view
-          Annotation ann = ngramView.newAnnotation(i + "gram" + id, Uri.TOKEN, j, j + i - 1);
+    int segmentEnd = 0;
+    for (int j = 0; j < length; j++) {
+      if (j == segmentEnd) {
+        while (segmentEnd < length && segments[segmentEnd] == segments[j])
+          segmentEnd++;
+      }
+      int orders = Math.min(ngrams, segmentEnd - j);
+      for (int i = 1; i <= orders; i++) {
+        if (compact) {
+          packed[3 * id] = j;
+          packed[3 * id + 1] = i;
+          packed[3 * id + 2] = segments[j];
+        } else {
+          // here start and end denote the indices in the token view
+          ngramView.add(i + "gram", j, j + i - 1);
           // add feature indicating the answer/question id: -1 for q, and 0-n for a
-          ann.addFeature(Stats.STATS1, head.getFeature(Stats.STATS1));
-          ann.addFeature(Stats.STATS2, i + ""); // add feature indicating which gram it is
-          ann.addFeature(Stats.NAME, this.getClass().getName());
-          ann.addFeature(Stats.CONFSCORE, "1");
-          id++;
+          TypedFeatures.setInt(ngramView, id, Stats.STATS1, segments[j]);
+          TypedFeatures.setInt(ngramView, id, Stats.STATS2, i); // add feature indicating which gram
+                                                                // it is
         }
+        id++;
       }
     }
+    if (compact)
+      ngramView.addMetaData(PACKED, Arrays.copyOf(packed, 3 * id));
+    ngramView.addContains(Uri.TOKEN, this.getClass().getName(), "ngram");
+    Provenance.record(ngramView, this.getClass().getName(), 1);
+
+    return container;
+  }
+
+  /**
+   * @param ngramView
+   *          view made by NGramMaker in either mode
+   * @return the ngrams of the view as (start, length, segment) int triples, where start is the
+   *         index of the first token and segment the question/answer id
+   */
+  public static int[] packed(View ngramView) {
+    Object packed = ngramView.getMetadata().get(PACKED);
+    if (packed instanceof int[])
+      return (int[]) packed;
+    if (packed instanceof List) { // read from LIF
+      List<?> values = (List<?>) packed;
+      int[] triples = new int[values.size()];
+      for (int i = 0; i < triples.length; i++)
+        triples[i] = ((Number) values.get(i)).intValue();
+      return triples;
+    }
 
-    // Step #7: Create a DataContainer with the result.
-    data = new DataContainer(container);
-    // Step #8: Serialize the data object and return the JSON.
-    return data.asPrettyJson();
+    // read through the columns of a columnar view, without building its annotations
+    int[] segments = TypedFeatures.ints(ngramView, Stats.STATS1);
+    int[] triples = new int[3 * segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      int start = ColumnarView.start(ngramView, i);
+      triples[3 * i] = start;
+      triples[3 * i + 1] = ColumnarView.end(ngramView, i) - start + 1;
+      triples[3 * i + 2] = segments[i];
+    }
+    return triples;
   }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import java.util.List;
 import org.lappsgrid.api.WebService;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.lif.Container;
 
 /**
  * defines how to pipeline webservices
@@ -20,10 +22,30 @@ public abstract class Pipeline {
    */
   private List<WebService> Stages;
 
+  /**
+   * dependencies between the stages, derived when first asked for
+   */
+  private StageGraph graph;
+
+  /**
+   * latency and throughput of each stage, or null to record none
+   */
+  private StageMetrics stageMetrics;
+
+  /**
+   * id of the document the pipeline runs on, or null if it is not known
+   */
+  private String documentId;
+
   private Data input;
 
   private String output;
 
+  /**
+   * output of an in-process run, serialized only when its json is asked for
+   */
+  private Container outputContainer;
+
   /**
    * init by indicating the length of the pipeline
    * 
@@ -47,6 +69,111 @@ public abstract class Pipeline {
    */
   public void addService(WebService newService) {
     Stages.add(newService);
+    graph = null;
+  }
+
+  /**
+   * @return the dependencies between the stages, derived from the annotation types each service
+   *         requires and produces in its metadata
+   */
+  public StageGraph getStageGraph() {
+    if (graph == null)
+      graph = new StageGraph(Stages);
+    return graph;
+  }
+
+  /**
+   * @return latency and throughput of each stage, or null if none are recorded
+   */
+  public StageMetrics getStageMetrics() {
+    return stageMetrics;
+  }
+
+  /**
+   * @param stageMetrics
+   *          records the latency and throughput of each stage, shared between pipelines, or null
+   *          to record none
+   */
+  public void setStageMetrics(StageMetrics stageMetrics) {
+    this.stageMetrics = stageMetrics;
+  }
+
+  /**
+   * @return id of the document the pipeline runs on, or null if it is not known
+   */
+  public String getDocumentId() {
+    return documentId;
+  }
+
+  /**
+   * @param documentId
+   *          id of the document the pipeline runs on, by which the runs of its stages are recorded
+   */
+  public void setDocumentId(String documentId) {
+    this.documentId = documentId;
+  }
+
+  /**
+   * run an in-process stage, measured if metrics are recorded
+   *
+   * @param index
+   *          position of the stage
+   * @param stage
+   *          the stage
+   * @param container
+   *          input of the stage
+   * @return output of the stage
+   */
+  protected Container execute(int index, ContainerService stage, Container container) {
+    if (stageMetrics == null)
+      return stage.run(container, documentId);
+    return stageMetrics.execute(index, stage, container, documentId);
+  }
+
+  /**
+   * run a plain web service, measured if metrics are recorded
+   *
+   * @param index
+   *          position of the stage
+   * @param stage
+   *          the stage
+   * @param input
+   *          json handed to the stage
+   * @return json returned by the stage
+   */
+  protected String execute(int index, WebService stage, String input) {
+    if (stageMetrics == null)
+      return stage.execute(input);
+    return stageMetrics.execute(index, stage, input);
+  }
+
+  /**
+   * @return the time in nanoseconds to measure from, 0 if no metrics are recorded
+   */
+  protected long clock() {
+    return stageMetrics == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * @param index
+   *          position of the stage whose input has been parsed
+   * @param since
+   *          clock() before parsing
+   */
+  protected void parsed(int index, long since) {
+    if (stageMetrics != null)
+      stageMetrics.parsed(index, Stages.get(index), System.nanoTime() - since);
+  }
+
+  /**
+   * @param index
+   *          position of the stage whose input has been serialized
+   * @param since
+   *          clock() before serializing
+   */
+  protected void serialized(int index, long since) {
+    if (stageMetrics != null)
+      stageMetrics.serialized(index, Stages.get(index), System.nanoTime() - since);
   }
 
   /**
@@ -64,21 +191,52 @@ public abstract class Pipeline {
     return input.asJson();
   }
 
+  /**
+   * @return raw text of input
+   */
+  public String getPipelineText() {
+    return (String) input.getPayload();
+  }
+
   /**
    * @param jsonText
    *          string to be set as output
    */
   protected void setOutput(String jsonText) {
     output = jsonText;
+    outputContainer = null;
+  }
+
+  /**
+   * @param container
+   *          container to be set as output
+   */
+  protected void setOutput(Container container) {
+    output = null;
+    outputContainer = container;
   }
 
   /**
    * @return output string
    */
   public String getOutput() {
+    if (output == null && outputContainer != null) {
+      TypedFeatures.flush(outputContainer);
+      output = new DataContainer(outputContainer).asJson();
+    }
     return output;
   }
 
+  /**
+   * @return output container, parsed from the output string if the pipeline was not run
+   *         in-process; null if the output is neither LIF nor binary LIF
+   */
+  public Container getOutputContainer() {
+    if (outputContainer == null && output != null)
+      outputContainer = BinaryLif.toContainer(output);
+    return outputContainer;
+  }
+
   /**
    * read text line given filepath
    * 
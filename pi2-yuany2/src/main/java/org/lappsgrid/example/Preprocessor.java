@@ -1,11 +1,7 @@
 package org.lappsgrid.example;
 
-import org.lappsgrid.api.ProcessingService;
 import static org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.DataContainer;
-import org.lappsgrid.serialization.Serializer;
-import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 import org.lappsgrid.vocabulary.Features;
@@ -14,7 +10,7 @@ import org.lappsgrid.vocabulary.Features;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * First step in PI2 pipeline: preprocess the raw text into question/answer fields with their
@@ -23,7 +19,7 @@ import java.util.ArrayList;
  * @author yuany
  *
  */
-public class Preprocessor implements ProcessingService {
+public class Preprocessor extends ContainerService {
 
   /**
    * storing the metadata
@@ -70,7 +66,7 @@ public class Preprocessor implements ProcessingService {
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
 
-    return data.asPrettyJson();
+    return data.asJson();
   }
 
   @Override
@@ -83,137 +79,133 @@ public class Preprocessor implements ProcessingService {
 
   @Override
   /**
-   * Take a raw text as input and output a LIF with annotations on different fields
+   * @return type of the annotations of the view added by this step
+   */
+  public String getProducedType() {
+    return Uri.SENTENCE;
+  }
+
+  @Override
+  /**
+   * Take a container holding the raw text and add a view with annotations on different fields
    * 
-   * @param input
-   *          LIF JSON string
+   * @param container
+   *          container holding the raw text
    * 
-   * @return LIF JSOn string
+   * @return the container with the question/answer view added
    */
-  public String execute(String input) {
-    // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
-    // Step #2: Check the discriminator
-    final String discriminator = data.getDiscriminator();
-    if (discriminator.equals(Uri.ERROR)) {
-      // Return the input unchanged.
-      return input;
-    }
-    // Step #3: Extract the text.
-    Container container = null;
-    if (discriminator.equals(Uri.TEXT)) {
-      container = new Container();
-      container.setText(data.getPayload().toString());
-    } else {
-      // This is a format we don't accept.
-      String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
-    }
-
+  public Container execute(Container container) {
     View view = container.newView();
     String line = container.getText(); // read the filepath
 
-    ArrayList<ArrayList<Integer>> triples = findTriples(line);
-
-    if (triples != null && triples.size() > 1) {
-      int id = 0;
-      for (ArrayList<Integer> triple : triples) {
-        Annotation a = view.newAnnotation(id == 0 ? "q" : "a" + id, Uri.SENTENCE, triple.get(0),
-                triple.get(1));
-        a.addFeature(Stats.STATS1, triple.get(2) + "");
-        a.addFeature(Stats.NAME, this.getClass().getName());
-        a.addFeature(Stats.CONFSCORE, "1");
-        id++;
+    int[] triples = findTriples(line);
+
+    if (triples != null && triples.length > 3) {
+      for (int t = 0, id = 0; t < triples.length; t += 3, id++) {
+        view.newAnnotation(id == 0 ? "q" : "a" + id, Uri.SENTENCE, triples[t], triples[t + 1]);
+        TypedFeatures.setInt(view, id, Stats.STATS1, triples[t + 2]);
       }
 
     }
 
     view.addContains(Uri.SENTENCE, this.getClass().getName(), "qa_sentences");
-    data = new DataContainer(container);
+    Provenance.record(view, this.getClass().getName(), 1);
+    return container;
+  }
 
-    return data.asPrettyJson();
+  @Override
+  /**
+   * @return raw text is the only input format
+   */
+  protected boolean accepts(String discriminator) {
+    return discriminator.equals(Uri.TEXT);
   }
 
   /**
-   * scan through line and create triples <start, end, isCorrect> for question and each; answer
-   * (question appears at the first and isCorrect field is left empty)
+   * scan through line once and create triples <start, end, isCorrect> for question and each
+   * answer (question appears at the first and isCorrect is -1). An answer starts with a token "A"
+   * followed by any number of digits, then a token holding isCorrect. Nothing is allocated per
+   * character: the triples are packed into one int array
    * 
    * @param line
    *          input string
-   * @return the list of the triples found
+   * @return the triples found, three ints each, or null if there is no line
+   * @throws StageException
+   *           if the correctness label of an answer is missing or not a number
    */
-  private ArrayList<ArrayList<Integer>> findTriples(String line) {
+  public static int[] findTriples(String line) {
 
     if (line == null)
       return null;
 
-    ArrayList<ArrayList<Integer>> triples = new ArrayList<ArrayList<Integer>>();
-    int ptr = 0;
     int len = line.length();
-    ArrayList<Integer> triple = new ArrayList<>();
+    int[] triples = new int[24];
+    int size = 0;
 
-    assert line.substring(0, 1).equals("Q");
-    ptr += 1; // move to first char in Q
-    triple.add(ptr + 1); // add start
-    while (!line.substring(ptr + 1, nextToken(line, ptr)).matches("A\\d")) {
-      ptr = nextToken(line, ptr);
-    }
-    triple.add(ptr); // add end
-    triple.add(-1); // placeholder
-    triples.add(triple);
+    assert line.charAt(0) == 'Q';
+    triples[size++] = 2; // question starts after "Q "
+    int isCorrect = -1;
 
-    // now ptr points to the space before A1
+    int ptr = 1;
     while (ptr < len) {
-      triple = new ArrayList<>();
-      ptr = nextToken(line, ptr);
-      int isCorrect = Integer.parseInt(line.substring(ptr + 1, nextToken(line, ptr)));
-      ptr = nextToken(line, ptr);
-      triple.add(ptr + 1);
-      while (!(ptr + 1 >= line.length())
-              && !line.substring(ptr + 1, nextToken(line, ptr)).matches("A\\d")) {
-        ptr = nextToken(line, ptr);
+      // ptr is on a whitespace, the next token is [start, end)
+      int start = ptr + 1;
+      int end = start;
+      while (end < len && !Character.isWhitespace(line.charAt(end)))
+        end++;
+      if (!isAnswerId(line, start, end)) {
+        ptr = end;
+        continue;
+      }
+
+      // close the question or the previous answer at the whitespace before the answer id
+      if (size + 6 > triples.length)
+        triples = Arrays.copyOf(triples, triples.length * 2);
+      triples[size++] = ptr;
+      triples[size++] = isCorrect;
+
+      // the token after the answer id holds isCorrect
+      start = end + 1;
+      while (start < len && Character.isWhitespace(line.charAt(start)))
+        start++;
+      end = start;
+      isCorrect = 0;
+      while (end < len && !Character.isWhitespace(line.charAt(end))) {
+        char c = line.charAt(end++);
+        if (c < '0' || c > '9')
+          throw new StageException("Invalid correctness label at " + start + ": " + c);
+        isCorrect = isCorrect * 10 + (c - '0');
       }
-      triple.add(ptr);
-      triple.add(isCorrect);
-      triples.add(triple);
+      if (end == start)
+        throw new StageException("Missing correctness label at " + start);
+      triples[size++] = end + 1;
+      ptr = end;
     }
+    triples[size++] = len;
+    triples[size++] = isCorrect;
 
-    return triples;
+    return Arrays.copyOf(triples, size);
   }
 
   /**
-   * find the ptr at the end of the next token
-   * 
-   * @param line
-   *          the full text string
-   * @param ptr
-   *          the start index
-   * @return the ptr at the end of the next token
+   * @return whether line[start, end) is an answer id such as A1 or A12
    */
-  private int nextToken(String line, int ptr) {
-
-    if (ptr + 1 == line.length())
-      return ptr + 1;
-
-    if (line.substring(ptr, ptr + 1).equals(" ")) {
-      ptr++;
-      if (ptr + 1 == line.length())
-        return ptr + 1;
+  private static boolean isAnswerId(String line, int start, int end) {
+    if (end - start < 2 || line.charAt(start) != 'A')
+      return false;
+    for (int i = start + 1; i < end; i++) {
+      char c = line.charAt(i);
+      if (c < '0' || c > '9')
+        return false;
     }
-
-    while (!line.substring(ptr, ptr + 1).equals(" ")) {
-      ptr++;
-      if (ptr + 1 == line.length())
-        return ptr + 1;
-    }
-
-    return ptr;
+    return true;
   }
 
   /**
    * A class extends the Features class in LAPPS, which is used to store various value such as score
-   * and whether it is correct answer. Here the last two are used to record the name of the
-   * component generating the annotation and the confidence score of generating it
+   * and whether it is correct answer. Here the last two record the name of the component
+   * generating the annotation and the confidence score of generating it, where they differ from
+   * the Provenance of its view
    * 
    * @author yuany
    *
@@ -0,0 +1,151 @@
+package org.lappsgrid.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lappsgrid.example.Preprocessor.Stats;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * the component which produced an annotation and its confidence in it. Both are recorded once per
+ * view, next to its contains metadata, as the default of every annotation of the view; an
+ * annotation whose producer or confidence differs carries it in the Stats.NAME or Stats.CONFSCORE
+ * feature, which is what every annotation used to carry. of(view, index) resolves the effective
+ * values of any annotation, including those of views read from LIF written before
+ *
+ * @author yuany
+ *
+ */
+public class Provenance {
+
+  /**
+   * metadata key of the default provenance of a view
+   */
+  static final String KEY = "pi2provenance";
+
+  private final String producer;
+
+  private final double confidence;
+
+  /**
+   * @param producer
+   *          name of the component producing the annotation
+   * @param confidence
+   *          confidence of the component in the annotation
+   */
+  public Provenance(String producer, double confidence) {
+    this.producer = producer;
+    this.confidence = confidence;
+  }
+
+  /**
+   * @return name of the component producing the annotation, or null if it is not recorded
+   */
+  public String getProducer() {
+    return producer;
+  }
+
+  /**
+   * @return confidence of the component in the annotation, NaN if it is not recorded
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * record the provenance of every annotation of a view
+   *
+   * @param view
+   *          view holding the annotations
+   * @param producer
+   *          name of the component producing the annotations
+   * @param confidence
+   *          confidence of the component in the annotations
+   */
+  public static void record(View view, String producer, double confidence) {
+    Map<String, Object> provenance = new LinkedHashMap<>();
+    provenance.put("producer", producer);
+    provenance.put("confidence", confidence);
+    view.addMetaData(KEY, provenance);
+  }
+
+  /**
+   * record the provenance of one annotation, as far as it differs from that of its view
+   *
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @param producer
+   *          name of the component producing the annotation
+   * @param confidence
+   *          confidence of the component in the annotation
+   */
+  public static void set(View view, int index, String producer, double confidence) {
+    Provenance defaults = of(view);
+    if (defaults == null || !producer.equals(defaults.producer))
+      ColumnarView.setFeature(view, index, Stats.NAME, producer);
+    if (defaults == null || Double.compare(confidence, defaults.confidence) != 0)
+      ColumnarView.setFeature(view, index, Stats.CONFSCORE, format(confidence));
+  }
+
+  /**
+   * @param view
+   *          a view
+   * @return the provenance recorded for every annotation of the view, or null if there is none
+   */
+  @SuppressWarnings("rawtypes")
+  public static Provenance of(View view) {
+    Object provenance = view.getMetadata() == null ? null : view.getMetadata().get(KEY);
+    if (!(provenance instanceof Map))
+      return null;
+    Object producer = ((Map) provenance).get("producer");
+    Object confidence = ((Map) provenance).get("confidence");
+    return new Provenance(producer == null ? null : producer.toString(),
+            confidence instanceof Number ? ((Number) confidence).doubleValue() : Double.NaN);
+  }
+
+  /**
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @return the provenance of the annotation: its own where it has one, that of its view otherwise
+   */
+  public static Provenance of(View view, int index) {
+    Provenance defaults = of(view);
+    String producer = ColumnarView.getFeature(view, index, Stats.NAME);
+    String confidence = ColumnarView.getFeature(view, index, Stats.CONFSCORE);
+    if (producer == null)
+      producer = defaults == null ? null : defaults.producer;
+    return new Provenance(producer, confidence != null ? Double.parseDouble(confidence)
+            : defaults == null ? Double.NaN : defaults.confidence);
+  }
+
+  /**
+   * copy the provenance of a view to a view holding copies of its annotations
+   *
+   * @param source
+   *          view holding the annotations
+   * @param target
+   *          view holding the copies
+   */
+  public static void copy(View source, View target) {
+    Provenance provenance = of(source);
+    if (provenance != null)
+      record(target, provenance.producer, provenance.confidence);
+  }
+
+  /**
+   * @return the confidence as a feature value, "1" rather than "1.0" for a whole number
+   */
+  private static String format(double confidence) {
+    return confidence == Math.rint(confidence) && !Double.isInfinite(confidence)
+            ? Long.toString((long) confidence) : Double.toString(confidence);
+  }
+
+  @Override
+  public String toString() {
+    return producer + " (" + confidence + ")";
+  }
+}
@@ -5,14 +5,14 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import org.lappsgrid.api.WebService;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.example.Preprocessor.Stats;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.DataContainer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
@@ -27,6 +27,31 @@ import com.fasterxml.jackson.core.sym.Name;
  */
 public class QAPipeline extends Pipeline {
 
+  /**
+   * whether containers are handed to plain web services as binary LIF instead of LIF JSON
+   */
+  private boolean binaryTransport = false;
+
+  /**
+   * whether plain web services are asked to answer with deltas
+   */
+  private boolean deltaTransport = false;
+
+  /**
+   * whether in-process stages whose view the input already holds are skipped
+   */
+  private boolean skipDone = false;
+
+  /**
+   * pool running the independent stages in parallel, or null to run the stages one after another
+   */
+  private ForkJoinPool stagePool;
+
+  /**
+   * cache of the stage outputs, or null
+   */
+  private StageCache cache;
+
   /**
    * init by indicating the length of the pipeline
    * 
@@ -37,6 +62,54 @@ public class QAPipeline extends Pipeline {
     super(n);
   }
 
+  /**
+   * @param binaryTransport
+   *          hand containers to plain web services as binary LIF; only for services which accept
+   *          it, such as remote ContainerServices
+   */
+  public void setBinaryTransport(boolean binaryTransport) {
+    this.binaryTransport = binaryTransport;
+  }
+
+  /**
+   * @param deltaTransport
+   *          ask plain web services to answer with only the views they appended or changed, which
+   *          are merged into the document held by the pipeline; services which do not know the
+   *          protocol answer with the whole document as before
+   */
+  public void setDeltaTransport(boolean deltaTransport) {
+    this.deltaTransport = deltaTransport;
+  }
+
+  /**
+   * @param skipDone
+   *          skip the in-process stages whose view the container already holds, e.g. when a plain
+   *          web service earlier in the pipeline has added it
+   */
+  public void setSkipDone(boolean skipDone) {
+    this.skipDone = skipDone;
+  }
+
+  /**
+   * @param stagePool
+   *          pool running the stages which do not depend on each other in parallel, as scheduled
+   *          by the stage graph, or null to run the stages one after another; only used when
+   *          every stage is a ContainerService
+   */
+  public void setStagePool(ForkJoinPool stagePool) {
+    this.stagePool = stagePool;
+  }
+
+  /**
+   * @param cache
+   *          cache of the stage outputs, shared between pipelines, or null for none; only used
+   *          when every stage is a ContainerService, in which case the stages run one after
+   *          another
+   */
+  public void setCache(StageCache cache) {
+    this.cache = cache;
+  }
+
   @Override
   public
   /**
@@ -47,11 +120,9 @@ public class QAPipeline extends Pipeline {
    * @return one-line text read from the file
    */
   String readInput(String filePath) {
-    Scanner scanner;
     String line = null;
 
-    try {
-      scanner = new Scanner(new FileReader(filePath));
+    try (Scanner scanner = new Scanner(new FileReader(filePath))) {
       if (scanner.hasNext()) { // only read one line
         line = scanner.nextLine();
       }
@@ -62,56 +133,269 @@ public class QAPipeline extends Pipeline {
     return line;
   }
 
+  /**
+   * write the output of the last run to the filepath
+   * 
+   * @param filePath
+   *          path where the output file will be created
+   */
+  public void writeOutput(String filePath) {
+    writeOutput(filePath, getOutputContainer());
+  }
+
   @Override
   public void writeOutput(String filePath, String outputJson) {
+    // an empty file is written for a format we don't accept
+    writeOutput(filePath, BinaryLif.toContainer(outputJson));
+  }
+
+  /**
+   * write the precision and the scored answers in the container to the filepath; an empty file is
+   * created if there is no container
+   * 
+   * @param filePath
+   *          path where the output file will be created
+   * @param container
+   *          container produced by the pipeline
+   */
+  public void writeOutput(String filePath, Container container) {
     try {
       PrintWriter writer = new PrintWriter(filePath);
+      if (container != null)
+        writeOutput(writer, container, System.lineSeparator());
+      writer.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * print the precision followed by each answer and its score, then end the line
+   * 
+   * @param writer
+   *          writer to print to
+   * @param container
+   *          container produced by the pipeline
+   * @param separator
+   *          printed between the fields
+   */
+  public void writeOutput(PrintWriter writer, Container container, String separator) {
+    // get the view ranked by the evaluator
+    View qaView = new ViewIndex(container).require(Uri.SENTENCE, Evaluator.class.getName());
+    List<Annotation> anns = qaView.getAnnotations();
 
-      Data data = Serializer.parse(outputJson, Data.class);
-      final String discriminator = data.getDiscriminator();
-      Container container = null;
+    // print Precision@N
+    writer.print(TypedFeatures.getDouble(qaView, anns.size() - 1, Stats.STATS2));
 
-      // This is a format we don't accept.
-      if (!discriminator.equals(Uri.LAPPS)) {
-        String message = String.format("Unsupported discriminator type: %s", discriminator);
-        writer.close();
-        return;
-      }
+    // print answer and score
+    for (int i = 0; i < anns.size() - 1; i++) {
+      Annotation ann = anns.get(i);
+      // make name from a1 -> A1
+      String name = ann.getId().substring(0, 1).toUpperCase()
+              + Integer.parseInt(ann.getId().substring(1));
+      writer.print(separator);
+      writer.print(name + " " + TypedFeatures.getDouble(qaView, i, Stats.STATS2));
+    }
+    writer.println();
+  }
+
+  @Override
+  /**
+   * Run the stages one after another. Consecutive ContainerService stages hand the live container
+   * to each other, so json is only parsed and written where a plain web service is involved
+   */
+  public void runPipeline() {
 
-      container = new Container((Map) data.getPayload());
-      View qaView = container.getView(4); // get the last view
-      List<Annotation> anns = qaView.getAnnotations();
+    String stageInput = getPipelineInput();
+    Container container = null;
 
-      // print Precision@N
-      writer.println(anns.get(anns.size() - 1).getFeature(Stats.STATS2));
+    if (cache != null && inProcess()) {
+      try {
+        runCached(stageInput);
+      } catch (StageException e) {
+        setOutput(new Data<String>(Uri.ERROR, e.getMessage()).asJson());
+      }
+      return;
+    }
 
-      // print answer and score
-      for (int i = 0; i < anns.size() - 1; i++) {
-        Annotation ann = anns.get(i);
-        // make name from a0 -> A1
-        String name = ann.getId().substring(0, 1).toUpperCase()
-                + Integer.parseInt(ann.getId().substring(1, 2));
-        writer.println(name + " " + ann.getFeature(Stats.STATS2));
+    if (stagePool != null && inProcess()) {
+      try {
+        container = toContainer(stageInput);
+        if (container == null)
+          setOutput(stageInput);
+        else
+          setOutput(getStageGraph().run(container, stagePool, skipDone, getStageMetrics(),
+                  getDocumentId()));
+      } catch (StageException e) {
+        setOutput(new Data<String>(Uri.ERROR, e.getMessage()).asJson());
       }
+      return;
+    }
 
-      writer.close();
-    } catch (IOException e) {
-      e.printStackTrace();
+    List<WebService> stages = this.getPipelineStages();
+    for (int i = 0; i < stages.size(); i++) {
+      WebService service = stages.get(i);
+      if (service instanceof ContainerService) {
+        try {
+          if (container == null) {
+            long begin = clock();
+            container = toContainer(stageInput);
+            parsed(i, begin);
+            if (container == null) {
+              setOutput(stageInput);
+              return;
+            }
+          }
+          ContainerService stage = (ContainerService) service;
+          if (!skipDone || !stage.isDone(container))
+            container = execute(i, stage, container);
+        } catch (StageException e) {
+          setOutput(new Data<String>(Uri.ERROR, e.getMessage()).asJson());
+          return;
+        }
+        stageInput = null;
+      } else if (deltaTransport && !binaryTransport) {
+        try {
+          long begin = clock();
+          Data request;
+          if (container != null) {
+            TypedFeatures.flush(container);
+            request = new DataContainer(container);
+          } else {
+            // a LIF request keeps its views lazy, so sending them again costs no parsing
+            request = LazyLif.read(stageInput);
+            container = toContainer(request);
+            if (container == null) {
+              setOutput(stageInput);
+              return;
+            }
+          }
+          request.setParameter(Delta.PARAMETER, true);
+          String json = request.asJson();
+          serialized(i, begin);
+          String response = execute(i, service, json);
+          // merge into the document held here, unless the service sent a whole document or an error
+          int size = container.getViews().size();
+          begin = clock();
+          container = Delta.apply(container, Delta.version(json), LazyLif.read(response));
+          parsed(i, begin);
+          if (container != null && getStageMetrics() != null)
+            getStageMetrics().added(i, service, container, size);
+          stageInput = container == null ? response : null;
+        } catch (StageException e) {
+          setOutput(new Data<String>(Uri.ERROR, e.getMessage()).asJson());
+          return;
+        }
+      } else {
+        long begin = clock();
+        if (stageInput == null && binaryTransport) {
+          stageInput = BinaryLif.asJson(container);
+        } else if (stageInput == null) {
+          TypedFeatures.flush(container);
+          stageInput = new DataContainer(container).asJson();
+        }
+        serialized(i, begin);
+        stageInput = execute(i, service, stageInput);
+        container = null;
+      }
     }
+
+    if (container != null)
+      setOutput(container);
+    else
+      setOutput(stageInput);
   }
 
-  @Override
-  public void runPipeline() {
+  /**
+   * restore the views of the leading stages found in the cache and run the other stages, then
+   * cache the views of every cacheable stage run
+   *
+   * @param input
+   *          json string of the pipeline input
+   */
+  private void runCached(String input) {
+    List<WebService> stages = getPipelineStages();
+    // the keys of the stages up to the first one which can not be cached
+    String[] keys = new String[stages.size()];
+    String key = StageCache.key(null, input);
+    int cacheable = 0;
+    while (cacheable < stages.size()) {
+      String configuration = ((ContainerService) stages.get(cacheable)).getConfiguration();
+      if (configuration == null)
+        break;
+      key = StageCache.key(key, configuration);
+      keys[cacheable++] = key;
+    }
 
-    String stageInput = getPipelineInput();
-    String intermediateOutput = "";
+    Container container = toContainer(input);
+    if (container == null) {
+      setOutput(input);
+      return;
+    }
+    int first = 0;
+    for (; first < cacheable; first++) {
+      byte[] entry = cache.get(keys[first]);
+      if (entry == null)
+        break;
+      try {
+        for (View view : StageCache.unpack(entry))
+          container.addView(view);
+      } catch (StageException e) {
+        cache.remove(keys[first]); // a damaged entry is run again
+        break;
+      }
+    }
+
+    // views added by each stage run, cached once the pipeline is done so that encoding them
+    // does not turn the typed features of the later stages back into strings
+    int[] sizes = new int[stages.size() + 1];
+    for (int i = first; i < stages.size(); i++) {
+      sizes[i] = container.getViews().size();
+      ContainerService stage = (ContainerService) stages.get(i);
+      if (!skipDone || !stage.isDone(container))
+        container = execute(i, stage, container);
+    }
+    sizes[stages.size()] = container.getViews().size();
+    for (int i = first; i < cacheable; i++)
+      cache.put(keys[i], StageCache.pack(container.getViews().subList(sizes[i], sizes[i + 1])));
+    setOutput(container);
+  }
 
-    for (WebService service : this.getPipelineStages()) {
-      intermediateOutput = service.execute(stageInput);
-      stageInput = intermediateOutput;
+  /**
+   * @return whether every stage runs in-process
+   */
+  private boolean inProcess() {
+    for (WebService service : getPipelineStages()) {
+      if (!(service instanceof ContainerService))
+        return false;
     }
+    return true;
+  }
+
+  /**
+   * turn the json handed between stages into a container
+   * 
+   * @param json
+   *          text, LIF or binary LIF json string
+   * @return the container, or null if the json carries an error or an unknown format
+   */
+  private Container toContainer(String json) {
+    return toContainer(LazyLif.read(json));
+  }
 
-    setOutput(intermediateOutput);
+  /**
+   * @param data
+   *          parsed text, LIF or binary LIF
+   * @return the container, or null if the data is an error or of an unknown format
+   */
+  private Container toContainer(Data data) {
+    final String discriminator = data.getDiscriminator();
+    if (discriminator.equals(Uri.TEXT)) {
+      Container container = new Container();
+      container.setText(data.getPayload().toString());
+      return container;
+    }
+    return BinaryLif.toContainer(data);
   }
 
 }
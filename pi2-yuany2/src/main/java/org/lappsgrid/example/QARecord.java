@@ -0,0 +1,45 @@
+package org.lappsgrid.example;
+
+/**
+ * one question with its candidate answers, as read from a directory or a record stream
+ *
+ * @author yuany
+ *
+ */
+public class QARecord {
+
+  /**
+   * file name or record id, used to name the output
+   */
+  private String id;
+
+  /**
+   * the raw "Q ... A1 1 ..." line
+   */
+  private String text;
+
+  /**
+   * @param id
+   *          file name or record id
+   * @param text
+   *          the raw question and answers line
+   */
+  public QARecord(String id, String text) {
+    this.id = id;
+    this.text = text;
+  }
+
+  /**
+   * @return file name or record id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return the raw question and answers line
+   */
+  public String getText() {
+    return text;
+  }
+}
@@ -0,0 +1,83 @@
+package org.lappsgrid.example;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * reads a stream of questions, one "Q ... A1 1 ... A2 0 ..." record per line, optionally prefixed
+ * by an id and a tab. Lines are read one at a time so memory does not grow with the file; files
+ * ending with .gz are decompressed on the fly
+ *
+ * @author yuany
+ *
+ */
+public class QARecordReader implements Iterator<QARecord>, Closeable {
+
+  private BufferedReader reader;
+
+  /**
+   * record read ahead by hasNext()
+   */
+  private QARecord next;
+
+  private int lineNumber;
+
+  /**
+   * @param filePath
+   *          path to a plain or gzip-compressed record file
+   * @throws IOException
+   *           if the file can not be opened
+   */
+  public QARecordReader(String filePath) throws IOException {
+    InputStream in = new FileInputStream(filePath);
+    if (filePath.endsWith(".gz"))
+      in = new GZIPInputStream(in, 1 << 16);
+    reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next != null)
+      return true;
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isEmpty())
+          continue;
+        int tab = line.indexOf('\t');
+        if (tab < 0)
+          next = new QARecord(Integer.toString(lineNumber), line);
+        else
+          next = new QARecord(line.substring(0, tab), line.substring(tab + 1));
+        return true;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return false;
+  }
+
+  @Override
+  public QARecord next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    QARecord record = next;
+    next = null;
+    return record;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,64 @@
+package org.lappsgrid.example;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.lappsgrid.serialization.lif.Container;
+
+/**
+ * writes the results of a record stream to a single file, one line per question: the record id,
+ * the precision and the ranked answers with their scores, separated by tabs. Files ending with .gz
+ * are compressed on the fly
+ *
+ * @author yuany
+ *
+ */
+public class QARecordWriter implements Closeable {
+
+  private PrintWriter writer;
+
+  /**
+   * @param filePath
+   *          path to the plain or gzip-compressed output file
+   * @throws IOException
+   *           if the file can not be created
+   */
+  public QARecordWriter(String filePath) throws IOException {
+    OutputStream out = new FileOutputStream(filePath);
+    if (filePath.endsWith(".gz"))
+      out = new GZIPOutputStream(out, 1 << 16);
+    writer = new PrintWriter(
+            new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16));
+  }
+
+  /**
+   * write the result of one record; safe to call from several threads
+   *
+   * @param id
+   *          record id
+   * @param pipe
+   *          pipeline which has been run on the record
+   */
+  public synchronized void write(String id, QAPipeline pipe) {
+    Container container = pipe.getOutputContainer();
+    writer.print(id);
+    if (container == null) {
+      writer.println();
+      return;
+    }
+    writer.print('\t');
+    pipe.writeOutput(writer, container, "\t");
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
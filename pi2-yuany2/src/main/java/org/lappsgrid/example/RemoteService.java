@@ -0,0 +1,42 @@
+package org.lappsgrid.example;
+
+import org.lappsgrid.api.WebService;
+
+/**
+ * a web service called only through its LIF JSON interface, as a pipeline calls a service running
+ * elsewhere. Wrapping an in-process stage in it hides the live container interface, so that the
+ * transport a pipeline uses between plain web services can be run and compared locally
+ *
+ * @author yuany
+ *
+ */
+public class RemoteService implements WebService {
+
+  private WebService service;
+
+  /**
+   * @param service
+   *          service to call through its LIF JSON interface
+   */
+  public RemoteService(WebService service) {
+    this.service = service;
+  }
+
+  @Override
+  /**
+   * @return metadata of the wrapped service
+   */
+  public String getMetadata() {
+    return service.getMetadata();
+  }
+
+  @Override
+  /**
+   * @param input
+   *          LIF JSON string
+   * @return output of the wrapped service
+   */
+  public String execute(String input) {
+    return service.execute(input);
+  }
+}
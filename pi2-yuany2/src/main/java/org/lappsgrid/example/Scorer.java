@@ -1,37 +1,27 @@
 package org.lappsgrid.example;
 
-import org.lappsgrid.api.ProcessingService;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.example.Preprocessor.Stats;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.DataContainer;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 
-import groovyjarjarasm.asm.tree.IntInsnNode;
-
 // additional API for metadata
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
 
 /**
  * Fourth step in PI2. Takes the ngram view and compute score for each answer, which is added to the
- * feature in first view
+ * feature in a copy of the qa view
  * 
  * @author yuany
  *
  */
-public class Scorer implements ProcessingService {
+public class Scorer extends ContainerService {
 
   /**
    * storing the metadata
@@ -40,9 +30,51 @@ public class Scorer implements ProcessingService {
 
   private int ngrams;
 
+  /**
+   * function comparing the ngrams of each answer to those of the question
+   */
+  private Similarity similarity;
+
+  /**
+   * document frequencies of earlier runs; the answers of each question are used if there are none
+   */
+  private CorpusStatistics corpus;
+
+  /**
+   * collects the document frequencies of this run, if set
+   */
+  private CorpusStatisticsBuilder collector;
+
   public Scorer(int ngrams) {
+    this(ngrams, StandardSimilarity.OVERLAP);
+  }
+
+  /**
+   * @param ngrams
+   *          maximum ngram order
+   * @param similarity
+   *          function used to score the answers
+   */
+  public Scorer(int ngrams, Similarity similarity) {
     metadata = generateMetadata();
     this.ngrams = ngrams;
+    this.similarity = similarity;
+  }
+
+  /**
+   * @param corpus
+   *          document frequencies of earlier runs to score with
+   */
+  public void setCorpusStatistics(CorpusStatistics corpus) {
+    this.corpus = corpus;
+  }
+
+  /**
+   * @param collector
+   *          builder every scored answer is added to
+   */
+  public void setCollector(CorpusStatisticsBuilder collector) {
+    this.collector = collector;
   }
 
   /**
@@ -64,6 +96,7 @@ public class Scorer implements ProcessingService {
     // JSON for input information
     IOSpecification requires = new IOSpecification();
     requires.addFormat(Uri.LIF); // LIF (form)
+    requires.addAnnotation(Uri.SENTENCE);
     requires.addAnnotation(Uri.TOKEN);
     requires.addLanguage("en"); // Source language
     requires.setEncoding("UTF-8");
@@ -81,7 +114,7 @@ public class Scorer implements ProcessingService {
 
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
-    return data.asPrettyJson();
+    return data.asJson();
   }
 
   @Override
@@ -94,135 +127,181 @@ public class Scorer implements ProcessingService {
 
   @Override
   /**
-   * Take LIF which contains 3 views from previous steps and add score to the first view for each
-   * annotation
+   * @return type of the annotations of the view added by this step
+   */
+  public String getProducedType() {
+    return Uri.SENTENCE;
+  }
+
+  @Override
+  /**
+   * @return the class name and the parameters of this step
+   */
+  public String getConfiguration() {
+    // scores against corpus statistics depend on the statistics file, and collecting them is a
+    // side effect a cache hit would skip
+    if (corpus != null || collector != null)
+      return null;
+    return getClass().getName() + ":ngrams=" + ngrams + ",similarity=" + similarity.getName();
+  }
+
+  @Override
+  /**
+   * Take LIF which contains 3 views from previous steps and add a copy of the qa view with the score
+   * of each annotation
    * 
-   * @param input
-   *          LIF JSON string
+   * @param container
+   *          container holding the views of previous steps
    * 
-   * @return LIF JSOn string
+   * @return the container with the new view added
    */
-  public String execute(String input) {
-    // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
-    // Step #2: Check the discriminator
-    final String discriminator = data.getDiscriminator();
-    if (discriminator.equals(Uri.ERROR)) {
-      // Return the input unchanged.
-      return input;
-    }
-    // Step #3: Extract the text.
-    Container container = null;
-    if (discriminator.equals(Uri.LAPPS)) {
-      container = new Container((Map) data.getPayload());
-    } else {
-      // This is a format we don't accept.
-      String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
-    }
-
+  public Container execute(Container container) {
+    ViewIndex views = new ViewIndex(container);
     // get the ngram view
-    View ngramView = container.getView(2);
+    View ngramView = views.require(Uri.TOKEN, NGramMaker.class.getName());
     // get the token view
-    View tokenView = container.getView(1);
-    // get the qa view
-    View qaView = container.getView(0);
-    String text = container.getText();
-
-    for (Annotation ann : qaView.getAnnotations()) {
-      ann.addFeature(Stats.STATS2, this.getScore(ann.getId(), ngramView, tokenView, text) + "");
-      ann.addFeature(Stats.NAME, this.getClass().getName());
-      ann.addFeature(Stats.CONFSCORE, "1");
+    View tokenView = views.require(Uri.TOKEN, Tokenizer.class.getName());
+    // the scores are added to a copy of the qa view
+    View qaView = copyView(container,
+            views.require(Uri.SENTENCE, Preprocessor.class.getName()));
+    List<Annotation> qaanns = qaView.getAnnotations();
+    // hash every token once for the whole document
+    long[] tokenHashes = NGramHasher.hashTokens(container.getText(), tokenView);
+    // collect the ngrams of every question/answer in a single pass over the ngram view
+    TermVector[] vectors = prepNGrams(NGramMaker.packed(ngramView), tokenHashes, qaanns.size());
+    TermStatistics stats = corpus != null && corpus.documentCount() > 0 ? corpus
+            : new AnswerStatistics(vectors);
+    if (collector != null) {
+      // every answer is a document, known by the text it is part of and its position
+      long text = CorpusStatisticsBuilder.hash(container.getText());
+      for (int i = 1; i < vectors.length; i++)
+        collector.addDocument(CorpusStatisticsBuilder.documentId(text, i), vectors[i]);
+    }
+    TermVector question = vectors[0];
+
+    for (int i = 0; i < qaanns.size(); i++) {
+      TypedFeatures.setDouble(qaView, i, Stats.STATS2,
+              this.getScore(qaanns.get(i).getId(), question, vectors, stats));
     }
 
-    // a hack by copying the view 0 to a new view, since in-place modification is somehow not
-    // working
-    container.addView(qaView);
+    qaView.addContains(Uri.SENTENCE, this.getClass().getName(), "scored");
+    Provenance.record(qaView, this.getClass().getName() + ":" + similarity.getName(), 1);
 
-    // Step #7: Create a DataContainer with the result.
-    data = new DataContainer(container);
-    // Step #8: Serialize the data object and return the JSON.
-    return data.asPrettyJson();
+    return container;
   }
 
   /**
-   * function that returns score of an answer given ngram; currently it's just a place holder need
-   * to distinguish if it's question; if it is then return negative score
+   * function that returns score of an answer given ngram; need to distinguish if it's question; if
+   * it is then return negative score
    * 
    * @param id
    *          String id of the answer to be scored
-   * @param ngramView
-   *          view produced by NGramMaker
+   * @param question
+   *          ngram frequencies of the question
+   * @param vectors
+   *          ngram frequencies of each question/answer, indexed as in prepNGrams
+   * @param stats
+   *          statistics of the ngrams over the answers
    * @return the score of the answer
    */
-  private double getScore(String id, View ngramView, View tokenView, String text) {
+  private double getScore(String id, TermVector question, TermVector[] vectors,
+          TermStatistics stats) {
 
     if (id.equals("q"))
       return -1.0;
 
-    List<Annotation> ngramanns = ngramView.getAnnotations();
-    List<Annotation> tokenanns = tokenView.getAnnotations();
-
-    HashSet<String> target = new HashSet<>();
-    HashSet<String> answer = new HashSet<>();
-    HashSet<String> union = new HashSet<>();
+    int index = Integer.parseInt(id.substring(1));
+    TermVector answer = index < vectors.length ? vectors[index] : TermVector.of(new long[0], 0);
+    return similarity.score(question, answer, stats);
+  }
 
-    target = prepNGram("q", ngramanns, tokenanns, text);
-    answer = prepNGram(id, ngramanns, tokenanns, text);
-    union.addAll(target);
-    union.addAll(answer);
+  /**
+   * This prepares the ngram frequencies of the question (at index 0) and of every answer (at its
+   * id 1-n) in one pass over the ngram view
+   * 
+   * @param ngrams
+   *          the ngrams as (start, length, segment) triples, see NGramMaker.packed
+   * @param tokenHashes
+   *          hash of each token in the token view
+   * @param sentences
+   *          number of questions and answers
+   * @return ngram frequencies of each question/answer
+   */
+  private TermVector[] prepNGrams(int[] ngrams, long[] tokenHashes, int sentences) {
+    long[][] terms = new long[Math.max(sentences, 1)][];
+    int[] sizes = new int[terms.length];
+
+    for (int n = 0; n < ngrams.length; n += 3) {
+      // the segment is -1 for the question and 1-n for the answers
+      int index = Math.max(ngrams[n + 2], 0);
+      if (index >= terms.length) {
+        terms = Arrays.copyOf(terms, index + 1);
+        sizes = Arrays.copyOf(sizes, index + 1);
+      }
 
-    Iterator iter = target.iterator();
-    double n = 0;
-    while (iter.hasNext()) {
-      String gram = (String) iter.next();
-      if (answer.contains(gram))
-        n++;
+      int first = ngrams[n];
+      int last = first + ngrams[n + 1] - 1;
+      // tokens made of non-word characters only used to vanish from the front of the joined
+      // ngram string, so they are skipped to keep the same ngrams apart
+      while (first <= last && tokenHashes[first] == NGramHasher.EMPTY_TOKEN)
+        first++;
+
+      if (terms[index] == null)
+        terms[index] = new long[16];
+      else if (sizes[index] == terms[index].length)
+        terms[index] = Arrays.copyOf(terms[index], sizes[index] * 2);
+      terms[index][sizes[index]++] = NGramHasher.ngramKey(tokenHashes, first, last);
     }
 
-    return n / union.size();
+    TermVector[] vectors = new TermVector[terms.length];
+    for (int i = 0; i < terms.length; i++)
+      vectors[i] = TermVector.of(terms[i] == null ? new long[0] : terms[i], sizes[i]);
+    return vectors;
   }
 
   /**
-   * This prepares the ngram hashset for a given id which can be -1 (indicating the question) and
-   * 0-n (which is the answer id)
-   * 
-   * @param id
-   *          the id of the question/answer from which we collect the ngram
-   * @param anns
-   *          list of annotations in ngram view
-   * @param tokenanns
-   *          list of annotations in token view
-   * @param text
-   *          original text
-   * @return hashset of the ngrams
+   * document frequencies of the ngrams, taking every answer of the question as a document
    */
-  private HashSet<String> prepNGram(String id, List<Annotation> anns, List<Annotation> tokenanns,
-          String text) {
-    HashSet<String> set = new HashSet<>();
-
-    for (Annotation ann : anns) {
-      String gram_id = ann.getFeature(Stats.STATS1);
-
-      if (gram_id.equals("-1"))
-        gram_id = "q";
-      else
-        gram_id = "a" + gram_id;
-
-      if (gram_id.equals(id)) {
-        String tmp = "";
-        for (int i = ann.getStart().intValue(); i <= ann.getEnd(); i++) {
-          Annotation tokenann = tokenanns.get(i);
-          if (tmp.length() > 0)
-            tmp = tmp + " ";
-          tmp = tmp + text.substring(tokenann.getStart().intValue(), tokenann.getEnd().intValue())
-                  .replaceAll("\\W", "");
+  private static class AnswerStatistics implements TermStatistics {
+
+    private int documents;
+
+    private LongIntHashMap frequencies;
+
+    private double averageLength;
+
+    /**
+     * @param vectors
+     *          ngram frequencies of the question at 0 and of the answers after it
+     */
+    AnswerStatistics(TermVector[] vectors) {
+      long length = 0;
+      frequencies = new LongIntHashMap();
+      for (int i = 1; i < vectors.length; i++) {
+        for (int j = 0; j < vectors[i].size(); j++) {
+          long term = vectors[i].term(j);
+          frequencies.put(term, documentFrequency(term) + 1);
         }
-        set.add(tmp);
+        length += vectors[i].length();
       }
+      documents = vectors.length - 1;
+      averageLength = documents == 0 ? 0 : (double) length / documents;
+    }
+
+    @Override
+    public int documentCount() {
+      return documents;
     }
 
-    return set;
+    @Override
+    public int documentFrequency(long term) {
+      return Math.max(frequencies.get(term), 0);
+    }
+
+    @Override
+    public double averageLength() {
+      return averageLength;
+    }
   }
 
 }
\ No newline at end of file
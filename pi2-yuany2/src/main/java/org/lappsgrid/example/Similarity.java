@@ -0,0 +1,26 @@
+package org.lappsgrid.example;
+
+/**
+ * a scoring function comparing the ngrams of an answer to those of the question
+ *
+ * @author yuany
+ *
+ */
+public interface Similarity {
+
+  /**
+   * @return short name recorded with the scores
+   */
+  String getName();
+
+  /**
+   * @param question
+   *          term frequencies of the question
+   * @param answer
+   *          term frequencies of the answer
+   * @param stats
+   *          statistics of the collection the answer belongs to
+   * @return score of the answer
+   */
+  double score(TermVector question, TermVector answer, TermStatistics stats);
+}
@@ -0,0 +1,287 @@
+package org.lappsgrid.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * content-addressed cache of the views each stage adds. The key of a stage output chains the key
+ * of its input with the configuration of the stage, starting from the hash of the pipeline input,
+ * so equal inputs run through equally configured stages share their entries whatever file they
+ * came from. An entry keeps each view as binary LIF of its own with its checksum, and a view
+ * restored from it is only decoded when a later stage or the output touches it; the checksums are
+ * verified when the entry is unpacked, so that a damaged entry is found before any stage runs on
+ * its views. The memory tier is bounded in bytes and evicts the least recently used entries; the
+ * optional disk tier keeps every entry as a file named by its key and refills the memory tier on a
+ * hit. The disk tier is not bounded: it keeps every output ever put, those of older VERSIONs
+ * included, until its directory is cleared by hand
+ *
+ * @author yuany
+ *
+ */
+public class StageCache {
+
+  /**
+   * version of the cached outputs, part of the key of every entry so that a disk tier kept across
+   * runs does not serve outputs of an older build. Change it whenever a stage changes its output
+   * or the format of an entry changes
+   */
+  static final String VERSION = "pi2-stage-cache/3";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * entries of the memory tier in access order
+   */
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final long maxBytes;
+
+  private long bytes = 0;
+
+  /**
+   * directory of the disk tier, or null
+   */
+  private final File directory;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param maxBytes
+   *          bound of the memory tier in bytes
+   */
+  public StageCache(long maxBytes) {
+    this(maxBytes, null);
+  }
+
+  /**
+   * @param maxBytes
+   *          bound of the memory tier in bytes
+   * @param directory
+   *          directory of the disk tier, created if needed, or null for none; it grows without
+   *          bound
+   * @throws IllegalArgumentException
+   *           if the directory can not be created
+   */
+  public StageCache(long maxBytes, String directory) {
+    this.maxBytes = maxBytes;
+    this.directory = directory == null ? null : new File(directory);
+    if (this.directory != null && !this.directory.mkdirs() && !this.directory.isDirectory())
+      throw new IllegalArgumentException("Unable to create the stage cache directory "
+              + directory);
+  }
+
+  /**
+   * @param previous
+   *          key of the input of the stage, or null for the first stage
+   * @param part
+   *          the pipeline input for the first stage, the configuration of the stage otherwise
+   * @return key of the output of the stage; the key of the first stage starts from VERSION
+   */
+  public static String key(String previous, String part) {
+    // a SHA-256 hex digest, as for the versions of the delta protocol
+    return Delta.version((previous == null ? VERSION : previous) + '\n' + part);
+  }
+
+  /**
+   * @param views
+   *          views added by a stage
+   * @return the views as a cache entry: for each view its id, its contains metadata, the binary
+   *         LIF of a container holding the view alone and the CRC-32 of that binary LIF
+   */
+  public static byte[] pack(List<View> views) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(views.size());
+      for (View view : views) {
+        Container single = new Container();
+        single.addView(view);
+        byte[] encoded = BinaryLif.encode(single);
+        out.writeUTF(view.getId());
+        out.writeUTF(MAPPER.writeValueAsString(ViewIndex.contains(view)));
+        out.writeInt(encoded.length);
+        out.write(encoded);
+        out.writeLong(checksum(encoded));
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new StageException("Unable to cache a view: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @param entry
+   *          entry made by pack
+   * @return the views of the entry, each decoded when it is first touched
+   * @throws StageException
+   *           if the entry is damaged, including a view which does not match its checksum
+   */
+  @SuppressWarnings("unchecked")
+  public static List<View> unpack(byte[] entry) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+      int count = in.readInt();
+      List<View> views = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        String id = in.readUTF();
+        Map<String, Object> contains = MAPPER.readValue(in.readUTF(), Map.class);
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        if (in.readLong() != checksum(encoded))
+          throw new IOException("checksum mismatch in view " + id);
+        views.add(new CachedView(id, contains, encoded));
+      }
+      if (in.read() != -1)
+        throw new IOException("trailing bytes");
+      return views;
+    } catch (IOException | RuntimeException e) {
+      throw new StageException("Damaged stage cache entry: " + e.getMessage());
+    }
+  }
+
+  private static long checksum(byte[] encoded) {
+    CRC32 crc = new CRC32();
+    crc.update(encoded, 0, encoded.length);
+    return crc.getValue();
+  }
+
+  /**
+   * a view restored from a cache entry, decoded when it is first touched
+   */
+  private static class CachedView extends LazyView {
+
+    private byte[] encoded;
+
+    private CachedView(String id, Map<String, Object> contains, byte[] encoded) {
+      super(id, contains);
+      this.encoded = encoded;
+    }
+
+    @Override
+    protected View parse() {
+      View view = BinaryLif.decode(encoded).getViews().get(0);
+      encoded = null;
+      return view;
+    }
+  }
+
+  /**
+   * @param key
+   *          key of a stage output
+   * @return the entry of the output, or null if it is not cached
+   */
+  public byte[] get(String key) {
+    byte[] value;
+    synchronized (entries) {
+      value = entries.get(key);
+    }
+    if (value == null && directory != null) {
+      File file = new File(directory, key);
+      if (file.isFile()) {
+        try {
+          value = Files.readAllBytes(file.toPath());
+          remember(key, value);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    if (value == null)
+      misses.increment();
+    else
+      hits.increment();
+    return value;
+  }
+
+  /**
+   * @param key
+   *          key of a stage output
+   * @param value
+   *          the entry made by pack
+   */
+  public void put(String key, byte[] value) {
+    remember(key, value);
+    if (directory == null)
+      return;
+    // an existing file is replaced too: an output is only put after its stage ran, i.e. when an
+    // earlier entry was missing or damaged, and the file may be damaged as well
+    File file = new File(directory, key);
+    try {
+      // write to a temporary file first, so that no other run reads a partial entry
+      File temp = File.createTempFile(key, ".tmp", directory);
+      Files.write(temp.toPath(), value);
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * forget an entry which turned out to be unreadable
+   *
+   * @param key
+   *          key of a stage output
+   */
+  public void remove(String key) {
+    synchronized (entries) {
+      byte[] value = entries.remove(key);
+      if (value != null)
+        bytes -= value.length;
+    }
+    if (directory != null)
+      new File(directory, key).delete();
+  }
+
+  /**
+   * add an entry to the memory tier and evict the least recently used ones beyond the bound
+   */
+  private void remember(String key, byte[] value) {
+    if (value.length > maxBytes)
+      return;
+    synchronized (entries) {
+      byte[] previous = entries.put(key, value);
+      bytes += value.length - (previous == null ? 0 : previous.length);
+      Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= eldest.next().getValue().length;
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * @return number of lookups which found their entry
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups which did not find their entry
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
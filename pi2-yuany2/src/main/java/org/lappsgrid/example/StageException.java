@@ -0,0 +1,21 @@
+package org.lappsgrid.example;
+
+/**
+ * thrown by a ContainerService when its input can not be processed; the web service entry point
+ * turns it into an error data object
+ *
+ * @author yuany
+ *
+ */
+public class StageException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message
+   *          message reported in the error data object
+   */
+  public StageException(String message) {
+    super(message);
+  }
+}
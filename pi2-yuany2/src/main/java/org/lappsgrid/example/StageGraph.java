@@ -0,0 +1,280 @@
+package org.lappsgrid.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.lappsgrid.api.WebService;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * the dependencies between the stages of a pipeline, derived from the annotation types each
+ * service requires and produces in its metadata. A stage depends on every earlier stage producing
+ * a type it requires, on every earlier stage producing a type it produces too, and on every
+ * earlier stage requiring a type it produces, so that running the stages in dependency order gives
+ * the same views as running them one after another. The stages are grouped into levels, each stage
+ * one level after its latest dependency; the stages of a level are independent of each other
+ *
+ * @author yuany
+ *
+ */
+public class StageGraph {
+
+  private List<WebService> stages;
+
+  /**
+   * earlier stages each stage depends on
+   */
+  private List<List<Integer>> dependencies = new ArrayList<>();
+
+  /**
+   * stages of each level, in pipeline order
+   */
+  private List<List<Integer>> levels = new ArrayList<>();
+
+  /**
+   * @param stages
+   *          stages of a pipeline, in pipeline order
+   */
+  public StageGraph(List<WebService> stages) {
+    this.stages = new ArrayList<>(stages);
+    List<Set<String>> requires = new ArrayList<>();
+    List<Set<String>> produces = new ArrayList<>();
+    int[] level = new int[stages.size()];
+    for (int j = 0; j < stages.size(); j++) {
+      Map<String, Set<String>> annotations = annotations(stages.get(j));
+      requires.add(annotations == null ? null : annotations.get("requires"));
+      produces.add(annotations == null ? null : annotations.get("produces"));
+
+      List<Integer> depends = new ArrayList<>();
+      for (int i = 0; i < j; i++) {
+        if (requires.get(j) == null || requires.get(i) == null
+                || intersects(requires.get(j), produces.get(i))
+                || intersects(produces.get(j), produces.get(i))
+                || intersects(produces.get(j), requires.get(i))) {
+          depends.add(i);
+          level[j] = Math.max(level[j], level[i] + 1);
+        }
+      }
+      dependencies.add(Collections.unmodifiableList(depends));
+      while (levels.size() <= level[j])
+        levels.add(new ArrayList<Integer>());
+      levels.get(level[j]).add(j);
+    }
+  }
+
+  /**
+   * @param stage
+   *          position of a stage in the pipeline
+   * @return positions of the earlier stages the stage depends on
+   */
+  public List<Integer> getDependencies(int stage) {
+    return dependencies.get(stage);
+  }
+
+  /**
+   * @return positions of the stages of each level, in pipeline order
+   */
+  public List<List<Integer>> getLevels() {
+    return Collections.unmodifiableList(levels);
+  }
+
+  /**
+   * run the stages level by level. A level of one stage runs it on the container itself; the
+   * stages of a larger level run in parallel, each on its own copy of the container, and the
+   * views they add are then appended to the container in pipeline order
+   *
+   * @param container
+   *          container holding the input of the first stages
+   * @param pool
+   *          pool running the stages of a level
+   * @param skipDone
+   *          whether the stages whose view the container already holds are skipped
+   * @return the container with the views of every stage added
+   * @throws StageException
+   *           if a stage fails, or a stage is not a ContainerService
+   */
+  public Container run(Container container, ForkJoinPool pool, boolean skipDone) {
+    return run(container, pool, skipDone, null);
+  }
+
+  /**
+   * same as run(Container, ForkJoinPool, boolean), measuring each stage
+   *
+   * @param container
+   *          container holding the input of the first stages
+   * @param pool
+   *          pool running the stages of a level
+   * @param skipDone
+   *          whether the stages whose view the container already holds are skipped
+   * @param metrics
+   *          records the latency and throughput of each stage, or null
+   * @return the container with the views of every stage added
+   * @throws StageException
+   *           if a stage fails, or a stage is not a ContainerService
+   */
+  public Container run(Container container, ForkJoinPool pool, boolean skipDone,
+          StageMetrics metrics) {
+    return run(container, pool, skipDone, metrics, null);
+  }
+
+  /**
+   * same as run(Container, ForkJoinPool, boolean, StageMetrics), for a known document
+   *
+   * @param container
+   *          container holding the input of the first stages
+   * @param pool
+   *          pool running the stages of a level
+   * @param skipDone
+   *          whether the stages whose view the container already holds are skipped
+   * @param metrics
+   *          records the latency and throughput of each stage, or null
+   * @param document
+   *          id of the document the container holds, or null
+   * @return the container with the views of every stage added
+   * @throws StageException
+   *           if a stage fails, or a stage is not a ContainerService
+   */
+  public Container run(Container container, ForkJoinPool pool, boolean skipDone,
+          final StageMetrics metrics, final String document) {
+    for (List<Integer> level : levels) {
+      final List<Integer> run = new ArrayList<>(level.size());
+      for (int stage : level) {
+        if (!(stages.get(stage) instanceof ContainerService))
+          throw new StageException("Only in-process stages can be scheduled: "
+                  + stages.get(stage).getClass().getName());
+        ContainerService service = (ContainerService) stages.get(stage);
+        if (!skipDone || !service.isDone(container))
+          run.add(stage);
+      }
+      if (run.size() == 1) {
+        container = execute(run.get(0), container, metrics, document);
+        continue;
+      }
+
+      List<Callable<Container>> tasks = new ArrayList<>(run.size());
+      final int size = container.getViews().size();
+      for (final int stage : run) {
+        final Container copy = copy(container);
+        tasks.add(new Callable<Container>() {
+          @Override
+          public Container call() {
+            return execute(stage, copy, metrics, document);
+          }
+        });
+      }
+      List<Container> results = new ArrayList<>(tasks.size());
+      for (Future<Container> future : pool.invokeAll(tasks)) {
+        try {
+          results.add(future.get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new StageException("Interrupted while running the stages");
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof RuntimeException)
+            throw (RuntimeException) e.getCause();
+          throw new StageException(e.getCause().getMessage());
+        }
+      }
+      merge(container, size, results);
+    }
+    return container;
+  }
+
+  /**
+   * run a stage, measured if metrics are recorded
+   */
+  private Container execute(int stage, Container container, StageMetrics metrics,
+          String document) {
+    ContainerService service = (ContainerService) stages.get(stage);
+    if (metrics == null)
+      return service.run(container, document);
+    return metrics.execute(stage, service, container, document);
+  }
+
+  /**
+   * @return a container sharing the text, metadata and views of the container, to which a stage
+   *         can add views of its own
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Container copy(Container container) {
+    Container copy = new Container();
+    copy.setText(container.getText());
+    if (container.getLanguage() != null)
+      copy.setLanguage(container.getLanguage());
+    if (container.getMetadata() != null)
+      copy.setMetadata(new LinkedHashMap(container.getMetadata()));
+    for (View view : container.getViews())
+      copy.addView(view);
+    return copy;
+  }
+
+  /**
+   * append the views the stages added to their copies to the container, in pipeline order,
+   * renaming a view whose id is taken
+   */
+  private static void merge(Container container, int size, List<Container> results) {
+    Set<String> ids = new HashSet<>();
+    for (View view : container.getViews())
+      ids.add(view.getId());
+    for (Container result : results) {
+      List<View> views = result.getViews();
+      for (View view : views.subList(size, views.size())) {
+        if (!ids.add(view.getId())) {
+          int n = container.getViews().size();
+          while (!ids.add("v" + n))
+            n++;
+          view.setId("v" + n);
+        }
+        container.addView(view);
+      }
+    }
+  }
+
+  private static boolean intersects(Set<String> a, Set<String> b) {
+    for (String type : a) {
+      if (b.contains(type))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the annotation types under "requires" and "produces" in the metadata of a service,
+   *         null if its metadata can not be read
+   */
+  @SuppressWarnings("rawtypes")
+  private static Map<String, Set<String>> annotations(WebService service) {
+    Map<String, Set<String>> annotations = new LinkedHashMap<>();
+    annotations.put("requires", new HashSet<String>());
+    annotations.put("produces", new HashSet<String>());
+    Object payload;
+    try {
+      payload = Serializer.parse(service.getMetadata(), Data.class).getPayload();
+    } catch (RuntimeException e) {
+      return null;
+    }
+    if (!(payload instanceof Map))
+      return null;
+    for (Map.Entry<String, Set<String>> entry : annotations.entrySet()) {
+      Object spec = ((Map) payload).get(entry.getKey());
+      Object types = spec instanceof Map ? ((Map) spec).get("annotations") : null;
+      if (types instanceof List) {
+        for (Object type : (List) types)
+          entry.getValue().add(type.toString());
+      }
+    }
+    return annotations;
+  }
+}
@@ -0,0 +1,27 @@
+package org.lappsgrid.example;
+
+import org.lappsgrid.serialization.lif.Container;
+
+/**
+ * wraps every in-process run of a stage, e.g. to record it. Installed with
+ * ContainerService.setInterceptor; StageRecording of the optional pi2-jfr module installs one
+ * recording each run as a Java Flight Recorder event
+ *
+ * @author yuany
+ *
+ */
+public interface StageInterceptor {
+
+  /**
+   * run the stage, by calling service.execute(container) once
+   *
+   * @param service
+   *          the stage
+   * @param container
+   *          input of the stage
+   * @param document
+   *          id of the document the container holds, or null
+   * @return output of the stage
+   */
+  Container execute(ContainerService service, Container container, String document);
+}
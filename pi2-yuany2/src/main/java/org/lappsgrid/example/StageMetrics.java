@@ -0,0 +1,480 @@
+package org.lappsgrid.example;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.lappsgrid.api.WebService;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * latency and throughput of each stage of a pipeline, shared by the pipelines of a batch. For
+ * every call of a stage it records the time spent parsing the input of the stage, running the
+ * stage and serializing its input, the bytes of json handed to and returned by a plain web service
+ * and the annotations the stage added. Each measure goes into a histogram of power-of-two buckets
+ * made of LongAdders, so that concurrent pipelines record without locking. A pipeline without
+ * StageMetrics records nothing and reads no clock
+ *
+ * @author yuany
+ *
+ */
+public class StageMetrics {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * the attributes of a stage exposed through JMX
+   */
+  public interface StageMBean {
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    double getParseMeanMillis();
+
+    double getComputeMeanMillis();
+
+    double getComputeP50Millis();
+
+    double getComputeP99Millis();
+
+    double getSerializeMeanMillis();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getAnnotations();
+  }
+
+  /**
+   * counts of values in power-of-two buckets, with their sum and maximum
+   */
+  static class Histogram {
+    /**
+     * bucket b holds the values of b bits, i.e. 0 in bucket 0 and [2^(b-1), 2^b) in bucket b
+     */
+    private final LongAdder[] buckets = new LongAdder[64];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(new LongBinaryOperator() {
+      @Override
+      public long applyAsLong(long left, long right) {
+        return Math.max(left, right);
+      }
+    }, 0);
+
+    Histogram() {
+      for (int i = 0; i < buckets.length; i++)
+        buckets[i] = new LongAdder();
+    }
+
+    void add(long value) {
+      value = Math.max(value, 0);
+      buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+      count.increment();
+      sum.add(value);
+      max.accumulate(value);
+    }
+
+    long count() {
+      return count.sum();
+    }
+
+    long sum() {
+      return sum.sum();
+    }
+
+    double mean() {
+      long n = count.sum();
+      return n == 0 ? 0 : ((double) sum.sum()) / n;
+    }
+
+    /**
+     * @return upper bound of the bucket holding the quantile, at most the maximum
+     */
+    long quantile(double q) {
+      long n = count.sum();
+      if (n == 0)
+        return 0;
+      long rank = (long) Math.ceil(q * n);
+      long seen = 0;
+      for (int b = 0; b < buckets.length; b++) {
+        seen += buckets[b].sum();
+        if (seen >= rank)
+          return Math.min(b == 0 ? 0 : (1L << b) - 1, max.get());
+      }
+      return max.get();
+    }
+
+    long max() {
+      return max.get();
+    }
+  }
+
+  /**
+   * the measures of one stage
+   */
+  static class Stage implements StageMBean {
+    private final String name;
+
+    private final LongAdder errors = new LongAdder();
+
+    final Histogram parse = new Histogram();
+
+    final Histogram compute = new Histogram();
+
+    final Histogram serialize = new Histogram();
+
+    final Histogram bytesIn = new Histogram();
+
+    final Histogram bytesOut = new Histogram();
+
+    final Histogram annotations = new Histogram();
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public long getCalls() {
+      return compute.count();
+    }
+
+    @Override
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    @Override
+    public double getParseMeanMillis() {
+      return parse.mean() / 1e6;
+    }
+
+    @Override
+    public double getComputeMeanMillis() {
+      return compute.mean() / 1e6;
+    }
+
+    @Override
+    public double getComputeP50Millis() {
+      return compute.quantile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getComputeP99Millis() {
+      return compute.quantile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getSerializeMeanMillis() {
+      return serialize.mean() / 1e6;
+    }
+
+    @Override
+    public long getBytesIn() {
+      return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+      return bytesOut.sum();
+    }
+
+    @Override
+    public long getAnnotations() {
+      return annotations.sum();
+    }
+  }
+
+  /**
+   * the stages by position in the pipeline
+   */
+  private final ConcurrentNavigableMap<Integer, Stage> stages = new ConcurrentSkipListMap<>();
+
+  private final long started = System.nanoTime();
+
+  /**
+   * whether each stage is registered as an MBean on its first call
+   */
+  private final boolean jmx;
+
+  public StageMetrics() {
+    this(false);
+  }
+
+  /**
+   * @param jmx
+   *          expose each stage on its first call as an MBean named
+   *          org.lappsgrid.example:type=StageMetrics,stage=N-Name
+   */
+  public StageMetrics(boolean jmx) {
+    this.jmx = jmx;
+  }
+
+  /**
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @return the measures of the stage, created on its first call
+   */
+  Stage stage(int index, WebService service) {
+    Stage stage = stages.get(index);
+    if (stage == null) {
+      String name = service.getClass().getSimpleName();
+      Stage created = new Stage(
+              index + "-" + (name.isEmpty() ? service.getClass().getName() : name));
+      stage = stages.putIfAbsent(index, created);
+      if (stage == null) {
+        stage = created;
+        if (jmx)
+          register(stage);
+      }
+    }
+    return stage;
+  }
+
+  /**
+   * run an in-process stage, recording the time it takes and the annotations it adds
+   *
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param container
+   *          input of the stage
+   * @return output of the stage
+   */
+  public Container execute(int index, ContainerService service, Container container) {
+    return execute(index, service, container, null);
+  }
+
+  /**
+   * same as execute(int, ContainerService, Container), for a known document
+   *
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param container
+   *          input of the stage
+   * @param document
+   *          id of the document the container holds, or null
+   * @return output of the stage
+   */
+  public Container execute(int index, ContainerService service, Container container,
+          String document) {
+    Stage stage = stage(index, service);
+    int size = container.getViews().size();
+    long begin = System.nanoTime();
+    try {
+      container = service.run(container, document);
+    } catch (RuntimeException e) {
+      stage.errors.increment();
+      throw e;
+    }
+    stage.compute.add(System.nanoTime() - begin);
+    stage.annotations.add(annotations(container, size));
+    return container;
+  }
+
+  /**
+   * run a plain web service, recording the time it takes and the bytes of its input and output
+   *
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param input
+   *          LIF json handed to the service
+   * @return the json returned by the service
+   */
+  public String execute(int index, WebService service, String input) {
+    Stage stage = stage(index, service);
+    long begin = System.nanoTime();
+    String output;
+    try {
+      output = service.execute(input);
+    } catch (RuntimeException e) {
+      stage.errors.increment();
+      throw e;
+    }
+    stage.compute.add(System.nanoTime() - begin);
+    stage.bytesIn.add(utf8Length(input));
+    stage.bytesOut.add(output == null ? 0 : utf8Length(output));
+    return output;
+  }
+
+  /**
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param nanos
+   *          time spent parsing the input of the stage
+   */
+  public void parsed(int index, WebService service, long nanos) {
+    stage(index, service).parse.add(nanos);
+  }
+
+  /**
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param nanos
+   *          time spent serializing the input of the stage
+   */
+  public void serialized(int index, WebService service, long nanos) {
+    stage(index, service).serialize.add(nanos);
+  }
+
+  /**
+   * @param index
+   *          position of the stage in the pipeline
+   * @param service
+   *          the stage
+   * @param container
+   *          output of the stage
+   * @param size
+   *          number of views before the stage ran
+   */
+  public void added(int index, WebService service, Container container, int size) {
+    stage(index, service).annotations.add(annotations(container, size));
+  }
+
+  /**
+   * @return number of annotations in the views after the first size ones, counted without
+   *         building the annotations of a columnar view
+   */
+  public static int annotations(Container container, int size) {
+    List<View> views = container.getViews();
+    int count = 0;
+    for (int i = size; i < views.size(); i++)
+      count += ColumnarView.size(views.get(i));
+    return count;
+  }
+
+  /**
+   * @return number of bytes of the text in UTF-8, counted without encoding it
+   */
+  private static long utf8Length(CharSequence text) {
+    long bytes = text.length();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80)
+        bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2; // a surrogate pair makes 4
+    }
+    return bytes;
+  }
+
+  /**
+   * expose a stage on the platform MBean server; a stage of the same name registered by other
+   * metrics stays as it is
+   */
+  private static void register(Stage stage) {
+    try {
+      ObjectName name = new ObjectName(
+              "org.lappsgrid.example:type=StageMetrics,stage=" + stage.getName());
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(name))
+        server.registerMBean(new StandardMBean(stage, StageMBean.class), name);
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return the measures of every stage, in pipeline order, times in milliseconds
+   */
+  public List<Map<String, Object>> snapshot() {
+    List<Map<String, Object>> snapshot = new ArrayList<>();
+    for (Stage stage : stages.values()) {
+      Map<String, Object> measures = new LinkedHashMap<>();
+      measures.put("stage", stage.getName());
+      measures.put("calls", stage.getCalls());
+      measures.put("errors", stage.getErrors());
+      measures.put("parse", millis(stage.parse));
+      measures.put("compute", millis(stage.compute));
+      measures.put("serialize", millis(stage.serialize));
+      measures.put("bytesIn", stage.bytesIn.sum());
+      measures.put("bytesOut", stage.bytesOut.sum());
+      measures.put("annotations", stage.annotations.sum());
+      snapshot.add(measures);
+    }
+    return snapshot;
+  }
+
+  private static Map<String, Object> millis(Histogram histogram) {
+    Map<String, Object> times = new LinkedHashMap<>();
+    times.put("count", histogram.count());
+    times.put("mean", histogram.mean() / 1e6);
+    times.put("p50", histogram.quantile(0.5) / 1e6);
+    times.put("p90", histogram.quantile(0.9) / 1e6);
+    times.put("p99", histogram.quantile(0.99) / 1e6);
+    times.put("max", histogram.max() / 1e6);
+    return times;
+  }
+
+  /**
+   * @return the snapshot as a json object, with the seconds since the metrics were created
+   */
+  public String toJson() {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("seconds", (System.nanoTime() - started) / 1e9);
+    report.put("stages", snapshot());
+    try {
+      return MAPPER.writeValueAsString(report);
+    } catch (JsonProcessingException e) {
+      throw new StageException("Unable to write the stage metrics: " + e.getMessage());
+    }
+  }
+
+  /**
+   * print a table of the stages: calls, errors, mean and p99 of the compute time and means of the
+   * parse and serialize times in milliseconds, calls per second, MB in and out and annotations
+   *
+   * @param out
+   *          stream to print to
+   */
+  public void report(PrintStream out) {
+    double seconds = (System.nanoTime() - started) / 1e9;
+    out.printf("%-20s %8s %6s %9s %9s %9s %9s %9s %9s %9s %11s%n", "stage", "calls", "errors",
+            "compute", "p99", "parse", "serialize", "calls/s", "MB in", "MB out", "annotations");
+    for (Stage stage : stages.values()) {
+      out.printf("%-20s %8d %6d %9.3f %9.3f %9.3f %9.3f %9.1f %9.2f %9.2f %11d%n",
+              stage.getName(), stage.getCalls(), stage.getErrors(), stage.getComputeMeanMillis(),
+              stage.getComputeP99Millis(), stage.getParseMeanMillis(),
+              stage.getSerializeMeanMillis(), stage.getCalls() / Math.max(seconds, 1e-9),
+              stage.getBytesIn() / 1e6, stage.getBytesOut() / 1e6, stage.getAnnotations());
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.lappsgrid.example;
+
+/**
+ * the similarities the Scorer can be run with. All of them walk the sorted term arrays of the two
+ * vectors side by side, so scoring an answer is linear in the number of its distinct ngrams
+ *
+ * @author yuany
+ *
+ */
+public enum StandardSimilarity implements Similarity {
+
+  /**
+   * number of shared ngrams over the number of ngrams in either, the original PI2 score
+   */
+  OVERLAP("overlap") {
+    @Override
+    public double score(TermVector question, TermVector answer, TermStatistics stats) {
+      double n = 0;
+      for (int i = 0, j = 0; i < question.size() && j < answer.size();) {
+        int cmp = Long.compare(question.term(i), answer.term(j));
+        if (cmp == 0)
+          n++;
+        if (cmp <= 0)
+          i++;
+        if (cmp >= 0)
+          j++;
+      }
+      return n / (question.size() + answer.size() - n);
+    }
+  },
+
+  /**
+   * sum of the smaller frequencies over sum of the larger frequencies of every ngram
+   */
+  WEIGHTED_JACCARD("weighted-jaccard") {
+    @Override
+    public double score(TermVector question, TermVector answer, TermStatistics stats) {
+      long min = 0;
+      long max = 0;
+      int i = 0;
+      int j = 0;
+      while (i < question.size() || j < answer.size()) {
+        int cmp = i == question.size() ? 1
+                : j == answer.size() ? -1 : Long.compare(question.term(i), answer.term(j));
+        if (cmp < 0) {
+          max += question.count(i++);
+        } else if (cmp > 0) {
+          max += answer.count(j++);
+        } else {
+          min += Math.min(question.count(i), answer.count(j));
+          max += Math.max(question.count(i++), answer.count(j++));
+        }
+      }
+      return max == 0 ? 0 : (double) min / max;
+    }
+  },
+
+  /**
+   * cosine of the tf-idf weighted ngram vectors
+   */
+  TFIDF_COSINE("tfidf-cosine") {
+    @Override
+    public double score(TermVector question, TermVector answer, TermStatistics stats) {
+      double dot = 0;
+      double questionNorm = 0;
+      double answerNorm = 0;
+      int i = 0;
+      int j = 0;
+      while (i < question.size() || j < answer.size()) {
+        int cmp = i == question.size() ? 1
+                : j == answer.size() ? -1 : Long.compare(question.term(i), answer.term(j));
+        if (cmp <= 0) {
+          double w = question.count(i) * idf(stats, question.term(i));
+          questionNorm += w * w;
+          if (cmp == 0)
+            dot += w * answer.count(j) * idf(stats, answer.term(j));
+        }
+        if (cmp >= 0) {
+          double w = answer.count(j) * idf(stats, answer.term(j));
+          answerNorm += w * w;
+        }
+        if (cmp <= 0)
+          i++;
+        if (cmp >= 0)
+          j++;
+      }
+      return questionNorm == 0 || answerNorm == 0 ? 0
+              : dot / Math.sqrt(questionNorm * answerNorm);
+    }
+
+    private double idf(TermStatistics stats, long term) {
+      return Math.log((stats.documentCount() + 1.0) / (stats.documentFrequency(term) + 1.0)) + 1;
+    }
+  },
+
+  /**
+   * Okapi BM25 of the answer for the distinct ngrams of the question, with k1 = 1.2 and b = 0.75
+   */
+  BM25("bm25") {
+    @Override
+    public double score(TermVector question, TermVector answer, TermStatistics stats) {
+      double k1 = 1.2;
+      double b = 0.75;
+      double avgLength = stats.averageLength();
+      double norm = k1 * (1 - b + (avgLength > 0 ? b * answer.length() / avgLength : 0));
+      double score = 0;
+      for (int i = 0, j = 0; i < question.size() && j < answer.size();) {
+        int cmp = Long.compare(question.term(i), answer.term(j));
+        if (cmp == 0) {
+          double df = stats.documentFrequency(answer.term(j));
+          double idf = Math.log(1 + (stats.documentCount() - df + 0.5) / (df + 0.5));
+          double tf = answer.count(j);
+          score += idf * tf * (k1 + 1) / (tf + norm);
+        }
+        if (cmp <= 0)
+          i++;
+        if (cmp >= 0)
+          j++;
+      }
+      return score;
+    }
+  };
+
+  private String name;
+
+  private StandardSimilarity(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param name
+   *          name of a similarity, e.g. bm25
+   * @return the similarity of that name
+   * @throws IllegalArgumentException
+   *           if there is no such similarity
+   */
+  public static StandardSimilarity forName(String name) {
+    for (StandardSimilarity similarity : values()) {
+      if (similarity.name.equals(name))
+        return similarity;
+    }
+    throw new IllegalArgumentException("Unknown similarity: " + name);
+  }
+}
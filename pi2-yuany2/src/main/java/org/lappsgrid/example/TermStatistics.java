@@ -0,0 +1,27 @@
+package org.lappsgrid.example;
+
+/**
+ * collection statistics a Similarity may weight terms with
+ *
+ * @author yuany
+ *
+ */
+public interface TermStatistics {
+
+  /**
+   * @return number of documents in the collection
+   */
+  int documentCount();
+
+  /**
+   * @param term
+   *          ngram key
+   * @return number of documents containing the ngram
+   */
+  int documentFrequency(long term);
+
+  /**
+   * @return average number of terms in a document
+   */
+  double averageLength();
+}
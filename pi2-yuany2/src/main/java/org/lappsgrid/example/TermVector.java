@@ -0,0 +1,85 @@
+package org.lappsgrid.example;
+
+import java.util.Arrays;
+
+/**
+ * term frequencies of a question or an answer as two parallel primitive arrays: the distinct ngram
+ * keys in increasing order and how often each occurs
+ *
+ * @author yuany
+ *
+ */
+public class TermVector {
+
+  private long[] terms;
+
+  private int[] counts;
+
+  /**
+   * total number of terms, counting repeats
+   */
+  private int length;
+
+  private TermVector(long[] terms, int[] counts, int length) {
+    this.terms = terms;
+    this.counts = counts;
+    this.length = length;
+  }
+
+  /**
+   * @param termIds
+   *          ngram keys in any order, repeated as often as they occur; sorted in place
+   * @param size
+   *          number of keys used in termIds
+   * @return the vector of the keys
+   */
+  public static TermVector of(long[] termIds, int size) {
+    Arrays.sort(termIds, 0, size);
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || termIds[i] != termIds[i - 1])
+        distinct++;
+    }
+    long[] terms = new long[distinct];
+    int[] counts = new int[distinct];
+    int j = -1;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || termIds[i] != termIds[i - 1])
+        terms[++j] = termIds[i];
+      counts[j]++;
+    }
+    return new TermVector(terms, counts, size);
+  }
+
+  /**
+   * @return number of distinct terms
+   */
+  public int size() {
+    return terms.length;
+  }
+
+  /**
+   * @param i
+   *          position between 0 and size()
+   * @return the i-th smallest ngram key
+   */
+  public long term(int i) {
+    return terms[i];
+  }
+
+  /**
+   * @param i
+   *          position between 0 and size()
+   * @return frequency of the i-th term
+   */
+  public int count(int i) {
+    return counts[i];
+  }
+
+  /**
+   * @return total number of terms, counting repeats
+   */
+  public int length() {
+    return length;
+  }
+}
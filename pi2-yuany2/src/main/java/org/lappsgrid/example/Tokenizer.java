@@ -1,12 +1,9 @@
 package org.lappsgrid.example;
 
-import org.lappsgrid.api.ProcessingService;
 import org.lappsgrid.example.Preprocessor.Stats;
 
 import static org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.DataContainer;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
@@ -16,7 +13,6 @@ import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * Second step in PI2. Takes the first view and tokenize the word in each question/answer
@@ -24,7 +20,7 @@ import java.util.Map;
  * @author yuany
  *
  */
-public class Tokenizer implements ProcessingService {
+public class Tokenizer extends ContainerService {
 
   /**
    * storing the metadata
@@ -71,7 +67,7 @@ public class Tokenizer implements ProcessingService {
 
     // Serialize the metadata to a string and return
     Data<ServiceMetadata> data = new Data<>(Uri.META, metadata);
-    return data.asPrettyJson();
+    return data.asJson();
   }
 
   @Override
@@ -82,59 +78,45 @@ public class Tokenizer implements ProcessingService {
     return metadata;
   }
 
+  @Override
+  /**
+   * @return type of the annotations of the view added by this step
+   */
+  public String getProducedType() {
+    return Uri.TOKEN;
+  }
+
   @Override
   /**
    * Take LIF which contains the view from preprocessor, and add new view annotating the token
    * 
-   * @param input
-   *          LIF JSON string
+   * @param container
+   *          container holding the views of previous steps
    * 
-   * @return LIF JSOn string
+   * @return the container with the new view added
    */
-  public String execute(String input) {
-    // Step #1: Parse the input.
-    Data data = Serializer.parse(input, Data.class);
-    // Step #2: Check the discriminator
-    final String discriminator = data.getDiscriminator();
-    if (discriminator.equals(Uri.ERROR)) {
-      // Return the input unchanged.
-      return input;
-    }
-    // Step #3: Extract the text.
-    Container container = null;
-    if (discriminator.equals(Uri.LAPPS)) {
-      container = new Container((Map) data.getPayload());
-    } else {
-      // This is a format we don't accept.
-      String message = String.format("Unsupported discriminator type: %s", discriminator);
-      return new Data<String>(Uri.ERROR, message).asJson();
-    }
-
+  public Container execute(Container container) {
     // Step #4: Create a new View
-    View view = container.newView();
-    List<Annotation> annotations = container.getView(0).getAnnotations(); // annotations of the 1st
-                                                                          // view
+    // the question/answer view of the preprocessor
+    View qaView = new ViewIndex(container).require(Uri.SENTENCE, Preprocessor.class.getName());
+    // the tokens are kept as columns, and only become Annotation objects if the view is serialized
+    ColumnarView view = ColumnarView.newView(container, Uri.TOKEN);
+    List<Annotation> annotations = qaView.getAnnotations();
     String text = container.getText();
+    // the word of a token is cut from the text by its offsets only when it is read
+    view.setCoveredText(Features.Token.WORD, text);
 
     int id = 0;
-    int start = 0;
     for (Annotation ann : annotations) {
       boolean isAnswer = ann.getId().contains("a");
       int answerId = isAnswer ? Integer.parseInt(ann.getId().substring(1)) : -1;
-      String[] words = text.substring(ann.getStart().intValue(), ann.getEnd().intValue()).trim()
-              .split("\\s+");
-      for (String word : words) {
-        start = text.indexOf(word, start);
-        if (start < 0) {
-          return new Data<String>(Uri.ERROR, "Unable to match word: " + word).asJson();
-        }
-        int end = start + word.length();
-        Annotation a = view.newAnnotation((isAnswer ? "atok" : "qtok") + id, Uri.TOKEN, start, end);
-        a.addFeature(Features.Token.WORD, word);
-        a.addFeature(Stats.STATS1, answerId + ""); // add feature indicating which answer/question
-                                                   // it's in
-        a.addFeature(Stats.NAME, this.getClass().getName());
-        a.addFeature(Stats.CONFSCORE, "1");
+      // scan the span of the question/answer in place, without copying it out of the text
+      WhitespaceScanner scanner = new WhitespaceScanner(text, ann.getStart().intValue(),
+              ann.getEnd().intValue());
+      while (scanner.next()) {
+        view.add(isAnswer ? "atok" : "qtok", scanner.start(), scanner.end());
+        // add feature indicating which answer/question it's in
+        TypedFeatures.setInt(view, id, Stats.STATS1, answerId);
         id++;
       }
     }
@@ -143,9 +125,7 @@ public class Tokenizer implements ProcessingService {
     // annotations it contains, in particular the name of the tool that produced the
     // annotations.
     view.addContains(Uri.TOKEN, this.getClass().getName(), "whitespace");
-    // Step #7: Create a DataContainer with the result.
-    data = new DataContainer(container);
-    // Step #8: Serialize the data object and return the JSON.
-    return data.asPrettyJson();
+    Provenance.record(view, this.getClass().getName(), 1);
+    return container;
   }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package org.lappsgrid.example;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * stores the numeric Stats features of a view natively while a document is processed in-process.
+ * Each feature is an int or double column indexed like the annotations of the view and kept in the
+ * view metadata; flush() turns the columns into the usual string features before the container is
+ * serialized. Getters fall back to parsing the string feature, so views read from LIF work too
+ *
+ * @author yuany
+ *
+ */
+public class TypedFeatures {
+
+  /**
+   * metadata key of the columns of a view
+   */
+  static final String COLUMNS = "pi2typed";
+
+  /**
+   * marks an int entry which has not been set
+   */
+  private static final int NO_INT = Integer.MIN_VALUE;
+
+  /**
+   * marks a double entry which has not been set; a NaN payload no computation produces, so that a
+   * NaN score is still stored
+   */
+  private static final long NO_DOUBLE = 0x7FF8DEADBEEF0000L;
+
+  private TypedFeatures() {
+  }
+
+  /**
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @param feature
+   *          feature name, e.g. Stats.STATS1
+   * @param value
+   *          value of the feature
+   */
+  public static void setInt(View view, int index, String feature, int value) {
+    Map<String, Object> columns = columns(view, true);
+    int[] column = (int[]) columns.get(feature);
+    if (column == null || index >= column.length) {
+      int length = column == null ? 0 : column.length;
+      column = column == null ? new int[Math.max(index + 1, 16)]
+              : Arrays.copyOf(column, Math.max(index + 1, length * 2));
+      Arrays.fill(column, length, column.length, NO_INT);
+      columns.put(feature, column);
+    }
+    column[index] = value;
+  }
+
+  /**
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @param feature
+   *          feature name, e.g. Stats.STATS2
+   * @param value
+   *          value of the feature
+   */
+  public static void setDouble(View view, int index, String feature, double value) {
+    Map<String, Object> columns = columns(view, true);
+    double[] column = (double[]) columns.get(feature);
+    if (column == null || index >= column.length) {
+      int length = column == null ? 0 : column.length;
+      column = column == null ? new double[Math.max(index + 1, 16)]
+              : Arrays.copyOf(column, Math.max(index + 1, length * 2));
+      Arrays.fill(column, length, column.length, Double.longBitsToDouble(NO_DOUBLE));
+      columns.put(feature, column);
+    }
+    column[index] = value;
+  }
+
+  /**
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @param feature
+   *          feature name
+   * @return value of the feature
+   */
+  public static int getInt(View view, int index, String feature) {
+    Map<String, Object> columns = columns(view, false);
+    Object column = columns == null ? null : columns.get(feature);
+    if (column instanceof int[] && index < ((int[]) column).length
+            && ((int[]) column)[index] != NO_INT)
+      return ((int[]) column)[index];
+    return Integer.parseInt(view.getAnnotations().get(index).getFeature(feature));
+  }
+
+  /**
+   * @param view
+   *          view holding the annotation
+   * @param index
+   *          position of the annotation in the view
+   * @param feature
+   *          feature name
+   * @return value of the feature
+   */
+  public static double getDouble(View view, int index, String feature) {
+    Map<String, Object> columns = columns(view, false);
+    Object column = columns == null ? null : columns.get(feature);
+    if (column instanceof double[] && index < ((double[]) column).length
+            && !isUnset(((double[]) column)[index]))
+      return ((double[]) column)[index];
+    String value = view.getAnnotations().get(index).getFeature(feature);
+    return value == null ? Double.NaN : Double.parseDouble(value);
+  }
+
+  /**
+   * @param view
+   *          view holding the annotations
+   * @param feature
+   *          feature name
+   * @return the feature of every annotation of the view, parsed at most once
+   */
+  public static int[] ints(View view, String feature) {
+    int size = ColumnarView.size(view);
+    int[] values = new int[size];
+    for (int i = 0; i < size; i++)
+      values[i] = getInt(view, i, feature);
+    return values;
+  }
+
+  /**
+   * @param view
+   *          view holding the annotations
+   * @param feature
+   *          feature name
+   * @return the feature of every annotation of the view, parsed at most once
+   */
+  public static double[] doubles(View view, String feature) {
+    int size = ColumnarView.size(view);
+    double[] values = new double[size];
+    for (int i = 0; i < size; i++)
+      values[i] = getDouble(view, i, feature);
+    return values;
+  }
+
+  /**
+   * reorder the columns of a view after its annotations have been reordered
+   *
+   * @param view
+   *          view holding the annotations
+   * @param order
+   *          order[i] is the former position of the annotation now at i
+   */
+  public static void permute(View view, int[] order) {
+    Map<String, Object> columns = columns(view, false);
+    if (columns == null)
+      return;
+    for (Map.Entry<String, Object> entry : columns.entrySet()) {
+      if (entry.getValue() instanceof int[]) {
+        int[] column = (int[]) entry.getValue();
+        int[] permuted = new int[Math.max(column.length, order.length)];
+        Arrays.fill(permuted, NO_INT);
+        for (int i = 0; i < order.length; i++)
+          permuted[i] = order[i] < column.length ? column[order[i]] : NO_INT;
+        entry.setValue(permuted);
+      } else if (entry.getValue() instanceof double[]) {
+        double[] column = (double[]) entry.getValue();
+        double[] permuted = new double[Math.max(column.length, order.length)];
+        Arrays.fill(permuted, Double.longBitsToDouble(NO_DOUBLE));
+        for (int i = 0; i < order.length; i++)
+          permuted[i] = order[i] < column.length ? column[order[i]]
+                  : Double.longBitsToDouble(NO_DOUBLE);
+        entry.setValue(permuted);
+      }
+    }
+  }
+
+  /**
+   * copy the columns of a view to a view holding copies of its annotations in the same order
+   *
+   * @param source
+   *          view holding the annotations
+   * @param target
+   *          view holding the copies
+   */
+  public static void copy(View source, View target) {
+    Map<String, Object> columns = columns(source, false);
+    if (columns == null)
+      return;
+    Map<String, Object> copied = columns(target, true);
+    for (Map.Entry<String, Object> entry : columns.entrySet()) {
+      if (entry.getValue() instanceof int[])
+        copied.put(entry.getKey(), ((int[]) entry.getValue()).clone());
+      else if (entry.getValue() instanceof double[])
+        copied.put(entry.getKey(), ((double[]) entry.getValue()).clone());
+    }
+  }
+
+  /**
+   * write the columns of every view of the container as string features and drop them, so that
+   * the container serializes as plain LIF
+   *
+   * @param container
+   *          container about to be serialized
+   */
+  public static void flush(Container container) {
+    for (View view : container.getViews()) {
+      if (view instanceof LazyView && !((LazyView) view).isMaterialized())
+        continue; // nothing has been stored in a view which has not been read
+      Map<String, Object> columns = columns(view, false);
+      if (columns == null)
+        continue;
+      List<Annotation> annotations = view.getAnnotations();
+      for (Map.Entry<String, Object> entry : columns.entrySet()) {
+        if (entry.getValue() instanceof int[]) {
+          int[] column = (int[]) entry.getValue();
+          for (int i = 0; i < column.length && i < annotations.size(); i++) {
+            if (column[i] != NO_INT)
+              annotations.get(i).addFeature(entry.getKey(), Integer.toString(column[i]));
+          }
+        } else if (entry.getValue() instanceof double[]) {
+          double[] column = (double[]) entry.getValue();
+          for (int i = 0; i < column.length && i < annotations.size(); i++) {
+            if (!isUnset(column[i]))
+              annotations.get(i).addFeature(entry.getKey(), Double.toString(column[i]));
+          }
+        }
+      }
+      view.getMetadata().remove(COLUMNS);
+    }
+  }
+
+  private static boolean isUnset(double value) {
+    return Double.doubleToRawLongBits(value) == NO_DOUBLE;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> columns(View view, boolean create) {
+    Map<String, Object> metadata = view.getMetadata();
+    if (metadata == null) {
+      if (!create)
+        return null;
+      metadata = new LinkedHashMap<>();
+      view.setMetadata(metadata);
+    }
+    Object columns = metadata.get(COLUMNS);
+    if (columns instanceof Map)
+      return (Map<String, Object>) columns;
+    if (!create)
+      return null;
+    Map<String, Object> created = new LinkedHashMap<>();
+    metadata.put(COLUMNS, created);
+    return created;
+  }
+}
@@ -0,0 +1,116 @@
+package org.lappsgrid.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.Contains;
+import org.lappsgrid.serialization.lif.View;
+
+/**
+ * finds the views of a container by the annotation type they contain and the producer of those
+ * annotations, as recorded by view.addContains(...), instead of by their position. The index is
+ * built in one pass over the views; a LazyView is indexed without being parsed. When several
+ * views contain the same key the last one wins, i.e. the latest revision of the annotations
+ *
+ * @author yuany
+ *
+ */
+public class ViewIndex {
+
+  /**
+   * the last view containing each annotation type
+   */
+  private Map<String, View> byType = new HashMap<>();
+
+  /**
+   * the last view containing each annotation type by each producer
+   */
+  private Map<String, View> byProducer = new HashMap<>();
+
+  /**
+   * @param container
+   *          container whose views are indexed
+   */
+  public ViewIndex(Container container) {
+    for (View view : container.getViews())
+      add(view);
+  }
+
+  /**
+   * index a view added after the index was built
+   *
+   * @param view
+   *          view to index
+   */
+  @SuppressWarnings("rawtypes")
+  public void add(View view) {
+    Object contains = contains(view);
+    if (!(contains instanceof Map))
+      return;
+    for (Object entry : ((Map) contains).entrySet()) {
+      Map.Entry e = (Map.Entry) entry;
+      String type = e.getKey().toString();
+      Object producer = null;
+      if (e.getValue() instanceof Contains)
+        producer = ((Contains) e.getValue()).getProducer();
+      else if (e.getValue() instanceof Map) // read from LIF
+        producer = ((Map) e.getValue()).get("producer");
+      byType.put(type, view);
+      if (producer != null)
+        byProducer.put(key(type, producer.toString()), view);
+    }
+  }
+
+  /**
+   * @param type
+   *          annotation type
+   * @return the last view containing the type, or null
+   */
+  public View find(String type) {
+    return byType.get(type);
+  }
+
+  /**
+   * @param type
+   *          annotation type
+   * @param producer
+   *          name of the component producing the annotations
+   * @return the last view containing the type by the producer, or null
+   */
+  public View find(String type, String producer) {
+    return byProducer.get(key(type, producer));
+  }
+
+  /**
+   * @param type
+   *          annotation type
+   * @param producer
+   *          name of the component producing the annotations
+   * @return the last view containing the type by the producer
+   * @throws StageException
+   *           if there is no such view, e.g. a stage before has not run
+   */
+  public View require(String type, String producer) {
+    View view = find(type, producer);
+    if (view == null)
+      throw new StageException(
+              String.format("No view of %s annotations produced by %s", type, producer));
+    return view;
+  }
+
+  /**
+   * @param view
+   *          a view
+   * @return the contains metadata of the view, read without parsing a LazyView; null if none
+   */
+  static Object contains(View view) {
+    if (view instanceof LazyView)
+      return ((LazyView) view).peekContains();
+    return view.getMetadata() == null ? null : view.getMetadata().get("contains");
+  }
+
+  private static String key(String type, String producer) {
+    return type + ' ' + producer;
+  }
+}
@@ -0,0 +1,110 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestBinaryLif {
+
+  private static final String TEXT = "Q What is LIF? A1 1 A b\u00e9ret, not a h\u00e2t. "
+          + "A2 0 A \u65e5\u672c \u2014 format.";
+
+  /**
+   * a container as the pipeline makes it, plus metadata of every value type
+   */
+  private static Container document() {
+    Container container = new Container();
+    container.setText(TEXT);
+    container.setLanguage("en");
+    container = new Tokenizer().execute(new Preprocessor().execute(container));
+    View view = container.newView();
+    view.addContains("misc", "test", "values");
+    Annotation annotation = view.newAnnotation("a0", "misc", 3, 7);
+    annotation.addFeature("string", "x");
+    annotation.addFeature("empty", "");
+    Map<String, Object> values = new LinkedHashMap<>();
+    values.put("int", 42);
+    values.put("negative", -1234567890123L);
+    values.put("double", 0.25);
+    values.put("true", true);
+    values.put("false", false);
+    values.put("null", null);
+    values.put("list", Arrays.<Object> asList("a", 1, 2.5));
+    values.put("map", new LinkedHashMap<String, Object>(values));
+    view.addMetaData("values", values);
+    view.newAnnotation("a1", "misc"); // neither start nor end
+    return container;
+  }
+
+  /**
+   * @return the container as LIF, its typed features written as strings the way services send it
+   */
+  private static String json(Container container) {
+    TypedFeatures.flush(container);
+    return new DataContainer(container).asJson();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    Container container = document();
+    String expected = json(container);
+    Container decoded = BinaryLif.decode(BinaryLif.encode(container));
+    assertEquals(expected, json(decoded));
+  }
+
+  @Test
+  public void testRoundTripFromJson() {
+    String expected = json(document());
+    Container parsed = BinaryLif.toContainer(expected);
+    String binary = BinaryLif.asJson(parsed);
+    assertEquals(expected, json(BinaryLif.toContainer(binary)));
+  }
+
+  @Test
+  public void testRoundTripEmpty() {
+    Container container = new Container();
+    container.setText("");
+    assertEquals(json(container), json(BinaryLif.decode(BinaryLif.encode(container))));
+  }
+
+  @Test
+  public void testOtherFormat() {
+    assertNull(BinaryLif.toContainer(new Data<String>(Uri.TEXT, TEXT)));
+  }
+
+  @Test
+  public void testTruncated() {
+    byte[] bytes = BinaryLif.encode(document());
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+    try {
+      BinaryLif.toContainer(
+              new Data<String>(BinaryLif.FORMAT, Base64.getEncoder().encodeToString(truncated)));
+      fail("a truncated container was decoded");
+    } catch (StageException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNotBinaryLif() {
+    try {
+      BinaryLif.decode("{\"discriminator\":1}".getBytes());
+      fail("JSON was decoded as binary LIF");
+    } catch (StageException e) {
+      // expected
+    }
+  }
+}
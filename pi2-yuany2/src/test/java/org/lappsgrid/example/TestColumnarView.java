@@ -0,0 +1,59 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.vocabulary.Features;
+
+public class TestColumnarView {
+
+  private static final String TEXT = "John loves Mary";
+
+  private static ColumnarView tokens() {
+    ColumnarView view = new ColumnarView("v0", Uri.TOKEN);
+    view.setCoveredText(Features.Token.WORD, TEXT);
+    view.add("tok", 0, 4);
+    view.add("tok", 5, 10);
+    view.setFeature(0, "pos", "NNP");
+    view.add("tok", 11, 15);
+    return view;
+  }
+
+  @Test
+  public void testCoveredTextBeforeAnnotations() {
+    ColumnarView view = tokens();
+    assertEquals("loves", view.getFeature(1, Features.Token.WORD));
+    assertEquals("NNP", view.getFeature(0, "pos"));
+    assertNull(view.getFeature(1, "pos"));
+  }
+
+  @Test
+  public void testCoveredTextInAnnotations() {
+    List<Annotation> annotations = tokens().getAnnotations();
+    assertEquals(3, annotations.size());
+    assertEquals("tok2", annotations.get(2).getId());
+    assertEquals("Mary", annotations.get(2).getFeature(Features.Token.WORD));
+    assertEquals("John", annotations.get(0).getFeature(Features.Token.WORD));
+    assertNull(annotations.get(2).getFeature("pos"));
+  }
+
+  /**
+   * a covered text feature set for one annotation is stored, the others keep their words, those
+   * of later annotations included
+   */
+  @Test
+  public void testCoveredTextOverridden() {
+    ColumnarView view = tokens();
+    view.setFeature(1, Features.Token.WORD, "love");
+    view.add("tok", 0, 4);
+    assertEquals("love", view.getFeature(1, Features.Token.WORD));
+    assertEquals("Mary", view.getFeature(2, Features.Token.WORD));
+    assertEquals("John", view.getFeature(3, Features.Token.WORD));
+    assertEquals("John", view.getAnnotations().get(0).getFeature(Features.Token.WORD));
+  }
+}
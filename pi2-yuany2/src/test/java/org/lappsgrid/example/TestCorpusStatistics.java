@@ -0,0 +1,83 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCorpusStatistics {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("corpus", ".stats");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  /**
+   * add the answers of a document, as Scorer does, and write the statistics
+   */
+  private CorpusStatistics run(String text, long[][] answers) throws IOException {
+    CorpusStatistics base = CorpusStatistics.open(file.getPath());
+    CorpusStatisticsBuilder builder = new CorpusStatisticsBuilder(base);
+    long hash = CorpusStatisticsBuilder.hash(text);
+    for (int i = 0; i < answers.length; i++)
+      builder.addDocument(CorpusStatisticsBuilder.documentId(hash, i + 1),
+              TermVector.of(answers[i].clone(), answers[i].length));
+    builder.write(file.getPath(), base);
+    return CorpusStatistics.open(file.getPath());
+  }
+
+  @Test
+  public void testRunAgain() throws IOException {
+    long[][] answers = { { 1, 2, 2 }, { 2, 3 } };
+    CorpusStatistics first = run("Q a A1 1 b A2 0 c", answers);
+    assertEquals(2, first.totalDocuments());
+    assertEquals(5, first.totalLength());
+    assertEquals(2, first.documentFrequency(2));
+
+    CorpusStatistics again = run("Q a A1 1 b A2 0 c", answers);
+    assertEquals(2, again.totalDocuments());
+    assertEquals(5, again.totalLength());
+    assertEquals(2, again.documentFrequency(2));
+    assertEquals(1, again.documentFrequency(3));
+  }
+
+  @Test
+  public void testOtherDocument() throws IOException {
+    long[][] answers = { { 1, 2, 2 }, { 2, 3 } };
+    run("Q a A1 1 b A2 0 c", answers);
+    CorpusStatistics other = run("Q d A1 1 b A2 0 c", answers);
+    assertEquals(4, other.totalDocuments());
+    assertEquals(4, other.documentFrequency(2));
+  }
+
+  @Test
+  public void testSameDocumentTwiceInARun() {
+    CorpusStatisticsBuilder builder = new CorpusStatisticsBuilder();
+    long id = CorpusStatisticsBuilder.documentId(CorpusStatisticsBuilder.hash("Q a A1 1 b"), 1);
+    assertTrue(builder.addDocument(id, TermVector.of(new long[] { 1 }, 1)));
+    assertFalse(builder.addDocument(id, TermVector.of(new long[] { 1 }, 1)));
+  }
+
+  @Test
+  public void testHasDocument() throws IOException {
+    CorpusStatistics statistics = run("Q a A1 1 b A2 0 c", new long[][] { { 1 }, { 2 } });
+    long hash = CorpusStatisticsBuilder.hash("Q a A1 1 b A2 0 c");
+    assertTrue(statistics.hasDocument(CorpusStatisticsBuilder.documentId(hash, 1)));
+    assertTrue(statistics.hasDocument(CorpusStatisticsBuilder.documentId(hash, 2)));
+    assertFalse(statistics.hasDocument(CorpusStatisticsBuilder.documentId(hash, 3)));
+  }
+}
@@ -0,0 +1,133 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestDelta {
+
+  private static final String TEXT = "Q What is a delta? A1 1 A delta is a change. A2 0 A river.";
+
+  private static Container preprocessed() {
+    Container container = new Container();
+    container.setText(TEXT);
+    return new Preprocessor().execute(container);
+  }
+
+  /**
+   * @return the container as LIF, its typed features written as strings the way services send it
+   */
+  private static String json(Container container) {
+    TypedFeatures.flush(container);
+    return new DataContainer(container).asJson();
+  }
+
+  /**
+   * @return the response of a service asked for a delta, as the pipeline reads it
+   */
+  private static Data<Object> respond(ContainerService service, String request) {
+    return LazyLif.read(service.execute(request));
+  }
+
+  /**
+   * @return the container as a request asking for a delta, as QAPipeline sends it
+   */
+  private static String request(Container container) {
+    TypedFeatures.flush(container);
+    DataContainer data = new DataContainer(container);
+    data.setParameter(Delta.PARAMETER, true);
+    return data.asJson();
+  }
+
+  @Test
+  public void testAppendedViews() {
+    Container base = preprocessed();
+    String request = request(base);
+    Data<Object> response = respond(new Tokenizer(), request);
+    assertEquals(Delta.FORMAT, response.getDiscriminator());
+
+    Container sequential = new Tokenizer().execute(preprocessed());
+    Container merged = Delta.apply(base, Delta.version(request), response);
+    assertSame(base, merged);
+    assertEquals(json(sequential), json(merged));
+  }
+
+  @Test
+  public void testReplacedAndAppendedViews() {
+    Container base = preprocessed();
+    String request = request(base);
+
+    // the service revises view 0 and appends a view of its own
+    Container changed = BinaryLif.toContainer(request);
+    View revised = changed.getViews().get(0);
+    revised.getAnnotations().get(0).addFeature("revised", "true");
+    View added = changed.newView();
+    added.addContains("misc", "test", "added");
+    added.newAnnotation("m0", "misc", 0, 4);
+    String response = Delta.of(changed, 1, Delta.version(request)).asJson();
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> payload = (Map<String, Object>) LazyLif.read(response).getPayload();
+    assertEquals(1, ((Map<?, ?>) payload.get("replaced")).size());
+
+    Container merged = Delta.apply(base, Delta.version(request), LazyLif.read(response));
+    assertEquals(2, merged.getViews().size());
+    assertEquals("true", merged.getViews().get(0).getAnnotations().get(0).getFeature("revised"));
+    assertEquals(json(changed), json(merged));
+  }
+
+  @Test
+  public void testUnchangedViewsAreNotSent() {
+    Container base = preprocessed();
+    String request = request(base);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> payload = (Map<String, Object>) respond(new Tokenizer(), request)
+            .getPayload();
+    assertEquals(0, ((Map<?, ?>) payload.get("replaced")).size());
+  }
+
+  @Test
+  public void testVersionMismatch() {
+    Container base = preprocessed();
+    String request = request(base);
+    Data<Object> response = respond(new Tokenizer(), request);
+    try {
+      Delta.apply(base, Delta.version(request + " "), response);
+      fail("a delta of another version was merged");
+    } catch (StageException e) {
+      // expected
+    }
+    assertEquals(1, base.getViews().size());
+  }
+
+  @Test
+  public void testSizeMismatch() {
+    Container base = preprocessed();
+    String request = request(base);
+    Data<Object> response = respond(new Tokenizer(), request);
+    base.newView(); // the document changed since the request was made
+    try {
+      Delta.apply(base, Delta.version(request), response);
+      fail("a delta of fewer views was merged");
+    } catch (StageException e) {
+      // expected
+    }
+    assertEquals(2, base.getViews().size());
+  }
+
+  @Test
+  public void testNotADelta() {
+    Container base = preprocessed();
+    String request = json(base); // no delta asked for
+    assertNull(Delta.apply(base, Delta.version(request), respond(new Tokenizer(), request)));
+  }
+}
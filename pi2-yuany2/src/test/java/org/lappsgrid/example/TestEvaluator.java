@@ -0,0 +1,80 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestEvaluator {
+
+  /**
+   * topK against a stable full sort by descending score, on scores with many ties
+   */
+  @Test
+  public void testTopKMatchesFullSort() {
+    Random random = new Random(11791);
+    for (int run = 0; run < 500; run++) {
+      final double[] scores = new double[1 + random.nextInt(60)];
+      for (int i = 0; i < scores.length; i++)
+        scores[i] = random.nextInt(5) / 4.0;
+      int from = random.nextInt(scores.length);
+      int k = random.nextInt(scores.length - from + 1);
+
+      List<Integer> sorted = new ArrayList<>();
+      for (int i = from; i < scores.length; i++)
+        sorted.add(i);
+      Collections.sort(sorted, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return Double.compare(scores[b], scores[a]);
+        }
+      });
+      int[] expected = new int[k];
+      for (int i = 0; i < k; i++)
+        expected[i] = sorted.get(i);
+
+      assertArrayEquals("top " + k + " of " + scores.length + " from " + from, expected,
+              Evaluator.topK(scores, from, scores.length, k));
+    }
+  }
+
+  @Test
+  public void testMetrics() {
+    // correct answers ranked 2nd and 3rd
+    Map<String, Double> metrics = Evaluator.metrics(new int[] { 0, 1, 1, 0 }, 2);
+    assertEquals(0.5, metrics.get(Evaluator.PRECISION_AT_N), 1e-9);
+    assertEquals(0.0, metrics.get("P@1"), 1e-9);
+    assertEquals(2 / 3.0, metrics.get("P@3"), 1e-9);
+    assertEquals((1 / 2.0 + 2 / 3.0) / 2, metrics.get(Evaluator.AVERAGE_PRECISION), 1e-9);
+    assertEquals(0.5, metrics.get(Evaluator.RECIPROCAL_RANK), 1e-9);
+    double dcg = 1 / log2(3) + 1 / log2(4);
+    double idcg = 1 + 1 / log2(3);
+    assertEquals(dcg / idcg, metrics.get(Evaluator.NDCG), 1e-9);
+  }
+
+  /**
+   * a document without a correct answer has no metric which needs one, so that it does not drag
+   * the means down
+   */
+  @Test
+  public void testMetricsWithoutCorrectAnswer() {
+    Map<String, Double> metrics = Evaluator.metrics(new int[] { 0, 0, 0 }, 0);
+    assertFalse(metrics.containsKey(Evaluator.PRECISION_AT_N));
+    assertFalse(metrics.containsKey(Evaluator.AVERAGE_PRECISION));
+    assertFalse(metrics.containsKey(Evaluator.RECIPROCAL_RANK));
+    assertFalse(metrics.containsKey(Evaluator.NDCG));
+    assertEquals(0.0, metrics.get("P@1"), 1e-9);
+  }
+
+  private static double log2(double x) {
+    return Math.log(x) / Math.log(2);
+  }
+}
@@ -0,0 +1,103 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestLazyLif {
+
+  private static final String TEXT = "Q Who loves Mary? A1 1 John loves Mary. A2 0 Mary loves John.";
+
+  /**
+   * @return the container of a document run through the preprocessor and the tokenizer, as JSON
+   *         indented the way no serializer of the pipeline writes it
+   */
+  private static String payload() {
+    Container container = new Container();
+    container.setText(TEXT);
+    container = new Tokenizer().execute(new Preprocessor().execute(container));
+    TypedFeatures.flush(container);
+    return Serializer.toPrettyJson(container);
+  }
+
+  private static Container read(String json) {
+    return (Container) LazyLif.read(json).getPayload();
+  }
+
+  /**
+   * a view keeps its offset in the whole document when the payload is only located at first,
+   * since the discriminator follows it
+   */
+  @Test
+  public void testPayloadBeforeDiscriminator() {
+    String payload = payload();
+    String json = "{\"payload\" : " + payload + ", \"discriminator\" : \"" + Uri.LAPPS + "\"}";
+    Data<Object> data = LazyLif.read(json);
+    assertEquals(Uri.LAPPS, data.getDiscriminator());
+    Container container = (Container) data.getPayload();
+    assertEquals(TEXT, container.getText());
+
+    Container expected = read(new Data<Object>(Uri.LAPPS, Serializer.parse(payload,
+            Container.class)).asJson());
+    assertEquals(2, container.getViews().size());
+    for (int i = 0; i < 2; i++) {
+      View view = container.getViews().get(i);
+      assertEquals(expected.getViews().get(i).getAnnotations().size(),
+              view.getAnnotations().size());
+      assertEquals(Serializer.toJson(expected.getViews().get(i)), Serializer.toJson(view));
+    }
+  }
+
+  /**
+   * views no stage touched are written back as the exact JSON they were read from
+   */
+  @Test
+  public void testUntouchedViewsVerbatim() {
+    String payload = payload();
+    String json = "{\"discriminator\":\"" + Uri.LAPPS + "\",\"payload\":" + payload + "}";
+    Container container = read(json);
+    String view = Serializer.toJson(container.getViews().get(1));
+    assertTrue(view.contains("\n")); // still indented as it was read
+    assertTrue(json.contains(view));
+    assertTrue(new DataContainer(container).asJson().contains(view));
+  }
+
+  @Test
+  public void testIsModified() {
+    Container container = read(new Data<Object>(Uri.LAPPS, Serializer.parse(payload(),
+            Container.class)).asJson());
+    LazyView view = (LazyView) container.getViews().get(0);
+    assertFalse(view.isMaterialized());
+    assertFalse(view.isModified());
+
+    view.getAnnotations();
+    assertTrue(view.isMaterialized());
+    assertFalse(view.isModified());
+
+    view.getAnnotations().get(0).addFeature("revised", "true");
+    assertTrue(view.isModified());
+    assertFalse(((LazyView) container.getViews().get(1)).isModified());
+  }
+
+  /**
+   * a renamed view is written with its new id, not as the JSON it was read from
+   */
+  @Test
+  public void testSetId() {
+    Container container = read(new Data<Object>(Uri.LAPPS, Serializer.parse(payload(),
+            Container.class)).asJson());
+    LazyView view = (LazyView) container.getViews().get(1);
+    view.setId("v7");
+    assertTrue(view.isMaterialized());
+    assertEquals("v7", Serializer.parse(Serializer.toJson(view), View.class).getId());
+    assertEquals(9, view.getAnnotations().size());
+  }
+}
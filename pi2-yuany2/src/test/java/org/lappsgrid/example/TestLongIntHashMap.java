@@ -0,0 +1,102 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLongIntHashMap {
+
+  /**
+   * @return the first count keys from the given one on which fall in the slot of a table of 16
+   */
+  private static long[] colliding(int slot, long from, int count) {
+    long[] keys = new long[count];
+    int n = 0;
+    for (long key = from; n < count; key++) {
+      if (LongIntHashMap.slot(key, 15) == slot)
+        keys[n++] = key;
+    }
+    return keys;
+  }
+
+  /**
+   * keys of the same slot are probed past each other, also around the end of the table
+   */
+  @Test
+  public void testCollisions() {
+    for (int slot : new int[] { 3, 15 }) {
+      long[] keys = colliding(slot, 1, 4);
+      LongIntHashMap map = new LongIntHashMap();
+      for (int i = 0; i < keys.length; i++)
+        map.put(keys[i], i);
+      for (int i = 0; i < keys.length; i++)
+        assertEquals(i, map.get(keys[i]));
+      assertEquals(LongIntHashMap.MISSING, map.get(colliding(slot, keys[3] + 1, 1)[0]));
+
+      map.put(keys[2], 7); // replaced in place, behind two other keys
+      assertEquals(7, map.get(keys[2]));
+      assertEquals(3, map.get(keys[3]));
+      assertEquals(4, map.size());
+    }
+  }
+
+  @Test
+  public void testZeroKey() {
+    LongIntHashMap map = new LongIntHashMap();
+    assertEquals(LongIntHashMap.MISSING, map.get(0L));
+    map.put(0L, 0);
+    map.put(0L, 5);
+    map.put(-1L, 1);
+    assertEquals(5, map.get(0L));
+    assertEquals(1, map.get(-1L));
+    assertEquals(2, map.size());
+    long[] keys = map.keys();
+    Arrays.sort(keys);
+    assertArrayEquals(new long[] { -1L, 0L }, keys);
+  }
+
+  /**
+   * a map grown from the smallest table through many rehashes against a HashMap
+   */
+  @Test
+  public void testGrowth() {
+    Random random = new Random(11791);
+    LongIntHashMap map = new LongIntHashMap(1);
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 20000; i++) {
+      // a narrow range so that some keys are put again
+      long key = random.nextBoolean() ? random.nextInt(10000) : random.nextLong();
+      map.put(key, i);
+      expected.put(key, i);
+      assertEquals(expected.size(), map.size());
+    }
+    for (Map.Entry<Long, Integer> entry : expected.entrySet())
+      assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+    assertEquals(LongIntHashMap.MISSING, map.get(10000L));
+
+    long[] keys = map.keys();
+    assertEquals(expected.size(), keys.length);
+    for (long key : keys)
+      assertEquals(expected.get(key).intValue(), map.get(key));
+  }
+
+  /**
+   * keys of one slot stay apart when the table grows under them
+   */
+  @Test
+  public void testCollisionsAcrossRehash() {
+    long[] keys = colliding(5, 1, 40);
+    LongIntHashMap map = new LongIntHashMap();
+    for (int i = 0; i < keys.length; i++)
+      map.put(keys[i], i);
+    assertEquals(keys.length, map.size());
+    for (int i = 0; i < keys.length; i++)
+      assertEquals(i, map.get(keys[i]));
+  }
+}
@@ -0,0 +1,182 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.lappsgrid.example.Preprocessor.Stats;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestNGramHasher {
+
+  /**
+   * repeated ngrams, case, punctuation inside and around words, and tokens with no word character
+   * at all, some of them first in an ngram
+   */
+  private static final String TEXT = "Q Who loves Mary, dearly? A1 1 John loves Mary -- dearly. "
+          + "A2 0 Mary, -- loves John! A3 1 -- Mary is loved by John. A4 0 John's love: Mary's! "
+          + "A5 0 ... A6 1 JOHN loves mary dearly, dearly loves Mary.";
+
+  private static final String[] TOKENS = { "John", "loves", "Mary,", "--", "Mary's", "JOHN",
+      "love:", "...", "dearly.", "a_b", "ab" };
+
+  private static long hash(String token) {
+    return NGramHasher.hashToken(token, 0, token.length());
+  }
+
+  /**
+   * tokens hash alike exactly when replaceAll("\\W", "") makes them equal
+   */
+  @Test
+  public void testNormalization() {
+    for (String a : TOKENS) {
+      for (String b : TOKENS) {
+        assertEquals(a + " " + b, a.replaceAll("\\W", "").equals(b.replaceAll("\\W", "")),
+                hash(a) == hash(b));
+      }
+    }
+    assertEquals(NGramHasher.EMPTY_TOKEN, hash("--"));
+    assertEquals(hash("loves"), NGramHasher.hashToken("John loves Mary", 5, 10));
+  }
+
+  /**
+   * the key of an ngram depends on the order and the number of its tokens
+   */
+  @Test
+  public void testNGramKey() {
+    long[] hashes = { hash("John"), hash("loves"), hash("John"), hash("loves"), hash("John") };
+    assertEquals(NGramHasher.ngramKey(hashes, 0, 1), NGramHasher.ngramKey(hashes, 2, 3));
+    assertTrue(NGramHasher.ngramKey(hashes, 0, 1) != NGramHasher.ngramKey(hashes, 1, 2));
+    assertTrue(NGramHasher.ngramKey(hashes, 0, 0) != NGramHasher.ngramKey(hashes, 0, 1));
+    assertTrue(NGramHasher.ngramKey(hashes, 0, 0) != NGramHasher.hashToken("John", 0, 4));
+
+    long[] empty = { NGramHasher.EMPTY_TOKEN, NGramHasher.EMPTY_TOKEN };
+    assertTrue(NGramHasher.ngramKey(empty, 0, 0) != NGramHasher.ngramKey(empty, 0, 1));
+  }
+
+  /**
+   * the scores of the hashed ngrams match those of the string sets the Scorer used before, ngram
+   * annotations and packed ngrams alike
+   */
+  @Test
+  public void testScoresMatchFormerImplementation() {
+    for (int ngrams = 1; ngrams <= 3; ngrams++) {
+      for (boolean compact : new boolean[] { false, true }) {
+        Container container = new Container();
+        container.setText(TEXT);
+        container = new Tokenizer().execute(new Preprocessor().execute(container));
+        // the former Scorer read the ngram annotations
+        View ngramView = new NGramMaker(ngrams).execute(container).getView(2);
+        List<Annotation> ngramanns = ngramView.getAnnotations();
+        List<Annotation> tokenanns = container.getView(1).getAnnotations();
+        if (compact) {
+          container.getViews().remove(2);
+          new NGramMaker(ngrams, true).execute(container);
+        }
+        View scored = new Scorer(ngrams).execute(container).getView(3);
+
+        List<Annotation> qaanns = scored.getAnnotations();
+        assertEquals(7, qaanns.size());
+        for (int i = 0; i < qaanns.size(); i++) {
+          String id = qaanns.get(i).getId();
+          assertEquals(ngrams + " " + compact + " " + id,
+                  legacyScore(id, ngramView, ngramanns, tokenanns, TEXT),
+                  TypedFeatures.getDouble(scored, i, Stats.STATS2), 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * two ngrams of the document share a key exactly when the former Scorer made the same string of
+   * them, tokens without word characters skipped from the front as the Scorer does
+   */
+  @Test
+  public void testKeysMatchFormerStrings() {
+    Container container = new Container();
+    container.setText(TEXT);
+    container = new Tokenizer().execute(new Preprocessor().execute(container));
+    View tokenView = container.getView(1);
+    long[] hashes = NGramHasher.hashTokens(TEXT, tokenView);
+    List<Annotation> tokenanns = tokenView.getAnnotations();
+    Map<String, Long> keys = new HashMap<>();
+    Map<Long, String> grams = new HashMap<>();
+    for (int start = 0; start < hashes.length; start++) {
+      for (int last = start; last < Math.min(start + 3, hashes.length); last++) {
+        int first = start;
+        while (first <= last && hashes[first] == NGramHasher.EMPTY_TOKEN)
+          first++;
+        long key = NGramHasher.ngramKey(hashes, first, last);
+        String gram = legacyGram(start, last, tokenanns, TEXT);
+        Long known = keys.put(gram, key);
+        if (known != null)
+          assertEquals(gram, known.longValue(), key);
+        String before = grams.put(key, gram);
+        if (before != null)
+          assertEquals(before, gram);
+      }
+    }
+  }
+
+  /**
+   * the former Scorer.getScore, with the segment of each ngram read through its column
+   */
+  private static double legacyScore(String id, View ngramView, List<Annotation> ngramanns,
+          List<Annotation> tokenanns, String text) {
+    if (id.equals("q"))
+      return -1.0;
+
+    HashSet<String> target = legacyPrepNGram("q", ngramView, ngramanns, tokenanns, text);
+    HashSet<String> answer = legacyPrepNGram(id, ngramView, ngramanns, tokenanns, text);
+    HashSet<String> union = new HashSet<>();
+    union.addAll(target);
+    union.addAll(answer);
+
+    double n = 0;
+    for (String gram : target) {
+      if (answer.contains(gram))
+        n++;
+    }
+    return n / union.size();
+  }
+
+  /**
+   * the former Scorer.prepNGram
+   */
+  private static HashSet<String> legacyPrepNGram(String id, View ngramView,
+          List<Annotation> anns, List<Annotation> tokenanns, String text) {
+    HashSet<String> set = new HashSet<>();
+    for (int n = 0; n < anns.size(); n++) {
+      int segment = TypedFeatures.getInt(ngramView, n, Stats.STATS1);
+      String gram_id = segment == -1 ? "q" : "a" + segment;
+      if (gram_id.equals(id)) {
+        Annotation ann = anns.get(n);
+        set.add(legacyGram(ann.getStart().intValue(), ann.getEnd().intValue(), tokenanns, text));
+      }
+    }
+    return set;
+  }
+
+  /**
+   * the string the former Scorer made of an ngram, tokens without word characters vanishing from
+   * its front
+   */
+  private static String legacyGram(int first, int last, List<Annotation> tokenanns, String text) {
+    String tmp = "";
+    for (int i = first; i <= last; i++) {
+      Annotation tokenann = tokenanns.get(i);
+      if (tmp.length() > 0)
+        tmp = tmp + " ";
+      tmp = tmp + text.substring(tokenann.getStart().intValue(), tokenann.getEnd().intValue())
+              .replaceAll("\\W", "");
+    }
+    return tmp;
+  }
+}
@@ -0,0 +1,157 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.example.Preprocessor.Stats;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestPreprocessor {
+
+  private static final String[] WORDS = { "John", "loves", "Mary", "with", "all", "his", "heart",
+      "is", "dearly", "loved", "by", "doesn't", "love", "." };
+
+  private static View sentences(String text) {
+    Container container = new Container();
+    container.setText(text);
+    return new Preprocessor().execute(container).getViews().get(0);
+  }
+
+  private static void assertInvalid(String line) {
+    try {
+      Preprocessor.findTriples(line);
+      fail("no error for " + line);
+    } catch (StageException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTwoDigitAnswerIds() {
+    StringBuilder sb = new StringBuilder("Q Who?");
+    for (int i = 1; i <= 12; i++)
+      sb.append(" A").append(i).append(' ').append(i % 2).append(" answer").append(i);
+    String text = sb.toString();
+    View view = sentences(text);
+    List<Annotation> anns = view.getAnnotations();
+    assertEquals(13, anns.size());
+    for (int i = 10; i <= 12; i++) {
+      Annotation ann = anns.get(i);
+      assertEquals("a" + i, ann.getId());
+      assertEquals("answer" + i,
+              text.substring(ann.getStart().intValue(), ann.getEnd().intValue()));
+      assertEquals(i % 2, TypedFeatures.getInt(view, i, Stats.STATS1));
+    }
+    assertEquals("Who?", text.substring(anns.get(0).getStart().intValue(),
+            anns.get(0).getEnd().intValue()));
+  }
+
+  @Test
+  public void testInvalidLabel() {
+    assertInvalid("Q Who? A1 yes John.");
+    assertInvalid("Q Who? A1 1x John.");
+  }
+
+  @Test
+  public void testMissingLabel() {
+    assertInvalid("Q Who? A1");
+    assertInvalid("Q Who? A1 ");
+  }
+
+  /**
+   * a service answers a line it can not segment with an error instead of throwing
+   */
+  @Test
+  public void testInvalidLabelAsService() {
+    String request = new Data<String>(Uri.TEXT, "Q Who? A1 ?").asJson();
+    String response = new Preprocessor().execute(request);
+    assertEquals(Uri.ERROR, LazyLif.read(response).getDiscriminator());
+  }
+
+  /**
+   * the spans match those of the substring/regex based implementation findTriples replaced, on
+   * lines with answer ids A1-A9, which is all it could parse
+   */
+  @Test
+  public void testSpansMatchFormerImplementation() {
+    for (int answers : new int[] { 1, 2, 9, 50 }) {
+      Random random = new Random(answers);
+      StringBuilder sb = new StringBuilder("Q John loves Mary?");
+      for (int i = 0; i < answers; i++) {
+        sb.append(" A").append(i % 9 + 1).append(' ').append(random.nextInt(2));
+        for (int j = random.nextInt(12); j >= 0; j--)
+          sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      String line = sb.toString();
+      assertArrayEquals(line, legacyFindTriples(line), Preprocessor.findTriples(line));
+    }
+  }
+
+  /**
+   * the former Preprocessor.findTriples, its triples flattened
+   */
+  private static int[] legacyFindTriples(String line) {
+    List<Integer> triples = new ArrayList<>();
+    int ptr = 0;
+    int len = line.length();
+
+    ptr += 1; // move to first char in Q
+    triples.add(ptr + 1); // add start
+    while (!line.substring(ptr + 1, legacyNextToken(line, ptr)).matches("A\\d")) {
+      ptr = legacyNextToken(line, ptr);
+    }
+    triples.add(ptr); // add end
+    triples.add(-1); // placeholder
+
+    // now ptr points to the space before A1
+    while (ptr < len) {
+      ptr = legacyNextToken(line, ptr);
+      int isCorrect = Integer.parseInt(line.substring(ptr + 1, legacyNextToken(line, ptr)));
+      ptr = legacyNextToken(line, ptr);
+      triples.add(ptr + 1);
+      while (!(ptr + 1 >= line.length())
+              && !line.substring(ptr + 1, legacyNextToken(line, ptr)).matches("A\\d")) {
+        ptr = legacyNextToken(line, ptr);
+      }
+      triples.add(ptr);
+      triples.add(isCorrect);
+    }
+
+    int[] spans = new int[triples.size()];
+    for (int i = 0; i < spans.length; i++)
+      spans[i] = triples.get(i);
+    return spans;
+  }
+
+  /**
+   * the former Preprocessor.nextToken
+   */
+  private static int legacyNextToken(String line, int ptr) {
+    if (ptr + 1 == line.length())
+      return ptr + 1;
+
+    if (line.substring(ptr, ptr + 1).equals(" ")) {
+      ptr++;
+      if (ptr + 1 == line.length())
+        return ptr + 1;
+    }
+
+    while (!line.substring(ptr, ptr + 1).equals(" ")) {
+      ptr++;
+      if (ptr + 1 == line.length())
+        return ptr + 1;
+    }
+
+    return ptr;
+  }
+}
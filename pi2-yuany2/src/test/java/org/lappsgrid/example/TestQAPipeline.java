@@ -0,0 +1,173 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lappsgrid.api.WebService;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Container;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TestQAPipeline {
+
+  private static final String TEXT = "Q Who loves Mary? A1 1 John loves Mary. A2 0 Mary loves John.";
+
+  /**
+   * a remote service which keeps the requests it is sent
+   */
+  private static class RecordingService extends RemoteService {
+
+    private List<Data<?>> requests = new ArrayList<>();
+
+    private RecordingService(WebService service) {
+      super(service);
+    }
+
+    @Override
+    public String execute(String input) {
+      requests.add(LazyLif.read(input));
+      return super.execute(input);
+    }
+  }
+
+  /**
+   * @return a pipeline of the PI2 stages, the tokenizer called as a plain web service
+   */
+  private static QAPipeline pipeline(WebService tokenizer) {
+    QAPipeline pipe = new QAPipeline(5);
+    pipe.addService(new Preprocessor());
+    pipe.addService(tokenizer);
+    pipe.addService(new NGramMaker(2));
+    pipe.addService(new Scorer(2));
+    pipe.addService(new Evaluator());
+    pipe.setPipelineInput(TEXT);
+    return pipe;
+  }
+
+  /**
+   * @return output of the pipeline with every stage in-process
+   */
+  private static String inProcess() {
+    QAPipeline pipe = pipeline(new Tokenizer());
+    pipe.runPipeline();
+    return pipe.getOutput();
+  }
+
+  /**
+   * the outputs hold the same document, the features of an annotation in whatever order
+   */
+  private static void assertSameDocument(String expected, String actual) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    assertEquals(mapper.readTree(expected), mapper.readTree(actual));
+  }
+
+  @Test
+  public void testBinaryTransport() throws IOException {
+    RecordingService tokenizer = new RecordingService(new Tokenizer());
+    QAPipeline pipe = pipeline(tokenizer);
+    pipe.setBinaryTransport(true);
+    pipe.runPipeline();
+    assertEquals(1, tokenizer.requests.size());
+    assertEquals(BinaryLif.FORMAT, tokenizer.requests.get(0).getDiscriminator());
+    assertSameDocument(inProcess(), pipe.getOutput());
+  }
+
+  @Test
+  public void testLifTransport() throws IOException {
+    RecordingService tokenizer = new RecordingService(new Tokenizer());
+    QAPipeline pipe = pipeline(tokenizer);
+    pipe.runPipeline();
+    assertEquals(Uri.LAPPS, tokenizer.requests.get(0).getDiscriminator());
+    assertSameDocument(inProcess(), pipe.getOutput());
+  }
+
+  @Test
+  public void testDeltaTransport() throws IOException {
+    RecordingService tokenizer = new RecordingService(new Tokenizer());
+    QAPipeline pipe = pipeline(tokenizer);
+    StageMetrics metrics = new StageMetrics();
+    pipe.setStageMetrics(metrics);
+    pipe.setDeltaTransport(true);
+    pipe.runPipeline();
+    assertTrue(Delta.isRequested(tokenizer.requests.get(0)));
+    assertSameDocument(inProcess(), pipe.getOutput());
+    // the 9 tokens the delta appended are counted, as for an in-process run
+    assertEquals(9L, metrics.snapshot().get(1).get("annotations"));
+  }
+
+  /**
+   * a delta made of another version of the document than the one sent is not merged
+   */
+  @Test
+  public void testDeltaOfAnotherVersion() {
+    WebService tokenizer = new RemoteService(new Tokenizer()) {
+      @Override
+      public String execute(String input) {
+        return super.execute(input + " "); // still the same document, but not the same json
+      }
+    };
+    QAPipeline pipe = pipeline(tokenizer);
+    pipe.setDeltaTransport(true);
+    pipe.runPipeline();
+    assertEquals(Uri.ERROR, LazyLif.read(pipe.getOutput()).getDiscriminator());
+  }
+
+  /**
+   * a service which does not know the protocol answers with the whole document, which replaces
+   * the one held by the pipeline
+   */
+  @Test
+  public void testWholeDocumentForDelta() throws IOException {
+    RecordingService tokenizer = new RecordingService(new Tokenizer()) {
+      @Override
+      public String execute(String input) {
+        Data<?> request = LazyLif.read(input);
+        request.setParameter(Delta.PARAMETER, false);
+        return super.execute(request.asJson());
+      }
+    };
+    QAPipeline pipe = pipeline(tokenizer);
+    StageMetrics metrics = new StageMetrics();
+    pipe.setStageMetrics(metrics);
+    pipe.setDeltaTransport(true);
+    pipe.runPipeline();
+    assertFalse(Delta.isRequested(tokenizer.requests.get(0)));
+    assertSameDocument(inProcess(), pipe.getOutput());
+    assertEquals(0L, metrics.snapshot().get(1).get("annotations"));
+  }
+
+  @Test
+  public void testIsDone() {
+    Container container = new Container();
+    container.setText(TEXT);
+    container = new Preprocessor().execute(container);
+    assertTrue(new Preprocessor().isDone(container));
+    assertFalse(new Tokenizer().isDone(container));
+  }
+
+  /**
+   * the tokens a plain web service added are not made again by the in-process tokenizer
+   */
+  @Test
+  public void testSkipDone() {
+    QAPipeline pipe = new QAPipeline(3);
+    pipe.addService(new Preprocessor());
+    pipe.addService(new RemoteService(new Tokenizer()));
+    pipe.addService(new Tokenizer());
+    pipe.setPipelineInput(TEXT);
+    pipe.runPipeline();
+    assertEquals(3, pipe.getOutputContainer().getViews().size());
+
+    pipe.setSkipDone(true);
+    pipe.runPipeline();
+    assertEquals(2, pipe.getOutputContainer().getViews().size());
+  }
+}
@@ -0,0 +1,187 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lappsgrid.serialization.DataContainer;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestStageCache {
+
+  private static final String TEXT = "Q Who loves Mary? A1 1 John loves Mary. A2 0 Mary loves John.";
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("stage-cache").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles())
+      file.delete();
+    directory.delete();
+  }
+
+  /**
+   * @return a document run through the preprocessor and the tokenizer
+   */
+  private static Container tokenized() {
+    Container container = new Container();
+    container.setText(TEXT);
+    return new Tokenizer().execute(new Preprocessor().execute(container));
+  }
+
+  private static String json(Container container) {
+    TypedFeatures.flush(container);
+    return new DataContainer(container).asJson();
+  }
+
+  private static QAPipeline pipeline(StageCache cache) {
+    QAPipeline pipe = new QAPipeline(5);
+    pipe.addService(new Preprocessor());
+    pipe.addService(new Tokenizer());
+    pipe.addService(new NGramMaker(2));
+    pipe.addService(new Scorer(2));
+    pipe.addService(new Evaluator());
+    pipe.setCache(cache);
+    pipe.setPipelineInput(TEXT);
+    return pipe;
+  }
+
+  @Test
+  public void testPackUnpack() {
+    Container original = tokenized();
+    String expected = json(original);
+
+    List<View> views = StageCache.unpack(StageCache.pack(original.getViews()));
+    assertEquals(2, views.size());
+    Container restored = new Container();
+    restored.setText(TEXT);
+    for (View view : views)
+      restored.addView(view);
+    assertEquals(expected, json(restored));
+  }
+
+  @Test
+  public void testChecksumMismatch() {
+    byte[] entry = StageCache.pack(tokenized().getViews());
+    entry[entry.length - 20] ^= 1; // inside the binary LIF of the last view
+    try {
+      StageCache.unpack(entry);
+      fail("a damaged entry was unpacked");
+    } catch (StageException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTrailingBytes() {
+    byte[] entry = StageCache.pack(tokenized().getViews());
+    try {
+      StageCache.unpack(Arrays.copyOf(entry, entry.length + 1));
+      fail("an entry with trailing bytes was unpacked");
+    } catch (StageException e) {
+      // expected
+    }
+  }
+
+  /**
+   * the memory tier keeps the most recently used entries which fit in its bytes
+   */
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    StageCache cache = new StageCache(250);
+    cache.put("a", new byte[100]);
+    cache.put("b", new byte[100]);
+    assertNotNull(cache.get("a")); // b is now the least recently used
+    cache.put("c", new byte[100]);
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+
+    cache.put("d", new byte[300]); // larger than the whole tier, not kept
+    assertNull(cache.get("d"));
+    assertNotNull(cache.get("a"));
+    assertEquals(4, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  /**
+   * a cache on the directory of an earlier one finds its entries and keeps them in memory
+   */
+  @Test
+  public void testDiskTier() {
+    byte[] entry = StageCache.pack(tokenized().getViews());
+    String key = StageCache.key(null, TEXT);
+    new StageCache(1024 * 1024, directory.getPath()).put(key, entry);
+
+    StageCache cache = new StageCache(1024 * 1024, directory.getPath());
+    assertArrayEquals(entry, cache.get(key));
+    new File(directory, key).delete();
+    assertArrayEquals(entry, cache.get(key)); // refilled into memory
+    assertNull(new StageCache(1024 * 1024, directory.getPath()).get(key));
+  }
+
+  @Test
+  public void testDirectoryNotCreated() throws IOException {
+    File file = new File(directory, "file");
+    file.createNewFile();
+    try {
+      new StageCache(1024, new File(file, "cache").getPath());
+      fail("a cache was made on a directory which can not exist");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * a run on a cache whose entries are all damaged runs the stages again, gives the same output
+   * and replaces the damaged entries
+   */
+  @Test
+  public void testDamagedEntryRunsAgain() throws IOException {
+    QAPipeline uncached = pipeline(null);
+    uncached.runPipeline();
+
+    StageCache cache = new StageCache(1024 * 1024, directory.getPath());
+    QAPipeline first = pipeline(cache);
+    first.runPipeline();
+    assertEquals(uncached.getOutput(), first.getOutput());
+    File[] files = directory.listFiles();
+    assertEquals(5, files.length);
+
+    for (File file : files) {
+      byte[] entry = Files.readAllBytes(file.toPath());
+      entry[entry.length - 1] ^= 1; // the checksum of the last view
+      Files.write(file.toPath(), entry);
+    }
+    cache = new StageCache(1024 * 1024, directory.getPath());
+    QAPipeline second = pipeline(cache);
+    second.runPipeline();
+    assertEquals(uncached.getOutput(), second.getOutput());
+    assertEquals(1, cache.getHits());
+    assertEquals(0, cache.getMisses());
+
+    // the stages ran again and put sound entries
+    cache = new StageCache(1024 * 1024, directory.getPath());
+    QAPipeline third = pipeline(cache);
+    third.runPipeline();
+    assertEquals(uncached.getOutput(), third.getOutput());
+    assertEquals(5, cache.getHits());
+  }
+}
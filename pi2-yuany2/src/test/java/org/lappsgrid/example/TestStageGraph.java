@@ -0,0 +1,107 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.metadata.IOSpecification;
+import org.lappsgrid.metadata.ServiceMetadata;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+public class TestStageGraph {
+
+  private static final String TEXT = "Q Who loves Mary? A1 1 John loves Mary. A2 0 Mary loves John.";
+
+  private static final String MARK = "http://example.org/test/Mark";
+
+  /**
+   * marks every question and answer, needing only the view of the preprocessor, so that it does
+   * not depend on the tokenizer
+   */
+  private static class Marker extends ContainerService {
+
+    @Override
+    public String getMetadata() {
+      ServiceMetadata metadata = new ServiceMetadata();
+      metadata.setName(getClass().getName());
+      IOSpecification requires = new IOSpecification();
+      requires.addAnnotation(Uri.SENTENCE);
+      IOSpecification produces = new IOSpecification();
+      produces.addAnnotation(MARK);
+      metadata.setRequires(requires);
+      metadata.setProduces(produces);
+      return new Data<>(Uri.META, metadata).asJson();
+    }
+
+    @Override
+    public String getProducedType() {
+      return MARK;
+    }
+
+    @Override
+    public Container execute(Container container) {
+      View qaView = new ViewIndex(container).require(Uri.SENTENCE, Preprocessor.class.getName());
+      View view = container.newView();
+      for (Annotation ann : qaView.getAnnotations())
+        view.newAnnotation("m" + ann.getId(), MARK, ann.getStart(), ann.getEnd());
+      view.addContains(MARK, getClass().getName(), "mark");
+      return container;
+    }
+  }
+
+  private static QAPipeline pipeline(List<ContainerService> stages) {
+    QAPipeline pipe = new QAPipeline(stages.size());
+    for (ContainerService stage : stages)
+      pipe.addService(stage);
+    pipe.setPipelineInput(TEXT);
+    return pipe;
+  }
+
+  @Test
+  public void testLevels() {
+    StageGraph graph = pipeline(
+            Arrays.<ContainerService> asList(new Preprocessor(), new Tokenizer(), new Marker()))
+                    .getStageGraph();
+    assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1, 2)), graph.getLevels());
+    assertEquals(Arrays.asList(0), graph.getDependencies(2));
+  }
+
+  /**
+   * the tokenizer and the marker run in parallel on copies of the container, whose views are
+   * merged in pipeline order under the ids a sequential run gives them
+   */
+  @Test
+  public void testParallelMatchesSequential() {
+    List<ContainerService> stages = Arrays.<ContainerService> asList(new Preprocessor(),
+            new Tokenizer(), new Marker());
+    QAPipeline sequential = pipeline(stages);
+    sequential.runPipeline();
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      QAPipeline parallel = pipeline(stages);
+      parallel.setStagePool(pool);
+      parallel.runPipeline();
+
+      List<View> views = parallel.getOutputContainer().getViews();
+      assertEquals(3, views.size());
+      assertEquals(Arrays.asList("v0", "v1", "v2"),
+              Arrays.asList(views.get(0).getId(), views.get(1).getId(), views.get(2).getId()));
+      assertSame(views.get(1), new ViewIndex(parallel.getOutputContainer()).find(Uri.TOKEN,
+              Tokenizer.class.getName()));
+      assertSame(views.get(2), new ViewIndex(parallel.getOutputContainer()).find(MARK,
+              Marker.class.getName()));
+      assertEquals(sequential.getOutput(), parallel.getOutput());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
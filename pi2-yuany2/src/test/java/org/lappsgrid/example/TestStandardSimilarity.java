@@ -0,0 +1,150 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * the similarities against scores worked out by hand from their formulas
+ */
+public class TestStandardSimilarity {
+
+  private static final double DELTA = 1e-12;
+
+  /**
+   * 4 documents; term 1 is in 1 of them, term 2 in 3, term 3 in none; 3 terms long on average
+   */
+  private static final TermStatistics STATS = new TermStatistics() {
+    @Override
+    public int documentCount() {
+      return 4;
+    }
+
+    @Override
+    public int documentFrequency(long term) {
+      return term == 1 ? 1 : term == 2 ? 3 : 0;
+    }
+
+    @Override
+    public double averageLength() {
+      return 3;
+    }
+  };
+
+  private static TermVector vector(long... terms) {
+    return TermVector.of(terms, terms.length);
+  }
+
+  /**
+   * question: term 1 once, term 2 twice; answer: term 2 once, term 3 three times
+   */
+  private static final long[] QUESTION = { 2, 1, 2 };
+
+  private static final long[] ANSWER = { 3, 2, 3, 3 };
+
+  @Test
+  public void testTermVector() {
+    TermVector vector = vector(ANSWER.clone());
+    assertEquals(2, vector.size());
+    assertEquals(4, vector.length());
+    assertEquals(2, vector.term(0));
+    assertEquals(1, vector.count(0));
+    assertEquals(3, vector.term(1));
+    assertEquals(3, vector.count(1));
+  }
+
+  @Test
+  public void testOverlap() {
+    // one shared distinct term of three distinct terms in either
+    assertEquals(1 / 3.0, StandardSimilarity.OVERLAP.score(vector(QUESTION.clone()),
+            vector(ANSWER.clone()), STATS), DELTA);
+  }
+
+  @Test
+  public void testWeightedJaccard() {
+    // min(2, 1) over 1 + max(2, 1) + 3
+    assertEquals(1 / 6.0, StandardSimilarity.WEIGHTED_JACCARD.score(vector(QUESTION.clone()),
+            vector(ANSWER.clone()), STATS), DELTA);
+  }
+
+  @Test
+  public void testTfidfCosine() {
+    // idf = ln((N + 1) / (df + 1)) + 1
+    double idf1 = Math.log(5 / 2.0) + 1;
+    double idf2 = Math.log(5 / 4.0) + 1;
+    double idf3 = Math.log(5 / 1.0) + 1;
+    // question (idf1, 2 idf2, 0), answer (0, idf2, 3 idf3)
+    double dot = 2 * idf2 * idf2;
+    double expected = dot / Math.sqrt((idf1 * idf1 + 4 * idf2 * idf2)
+            * (idf2 * idf2 + 9 * idf3 * idf3));
+    assertEquals(expected, StandardSimilarity.TFIDF_COSINE.score(vector(QUESTION.clone()),
+            vector(ANSWER.clone()), STATS), DELTA);
+  }
+
+  @Test
+  public void testBm25() {
+    // only term 2 is shared: df 3 of N 4, tf 1, answer length 4 against 3 on average
+    double idf = Math.log(1 + (4 - 3 + 0.5) / (3 + 0.5));
+    double norm = 1.2 * (1 - 0.75 + 0.75 * 4 / 3.0);
+    assertEquals(idf * 1 * 2.2 / (1 + norm), StandardSimilarity.BM25.score(
+            vector(QUESTION.clone()), vector(ANSWER.clone()), STATS), DELTA);
+  }
+
+  @Test
+  public void testNoSharedTerms() {
+    for (StandardSimilarity similarity : StandardSimilarity.values()) {
+      assertEquals(similarity.getName(), 0.0, similarity.score(vector(1, 1),
+              vector(4, 5, 5), STATS), DELTA);
+      assertEquals(similarity.getName(), 0.0, similarity.score(vector(1, 2), vector(), STATS),
+              DELTA);
+    }
+    // nothing to compare at all
+    assertEquals(0.0, StandardSimilarity.WEIGHTED_JACCARD.score(vector(), vector(), STATS),
+            DELTA);
+    assertEquals(0.0, StandardSimilarity.TFIDF_COSINE.score(vector(), vector(), STATS), DELTA);
+  }
+
+  /**
+   * the statistics of a corpus file, as the Scorer reads them with --stats
+   */
+  @Test
+  public void testCorpusStatistics() throws IOException {
+    File file = File.createTempFile("corpus", ".stats");
+    file.delete();
+    try {
+      CorpusStatistics empty = CorpusStatistics.open(file.getPath());
+      CorpusStatisticsBuilder builder = new CorpusStatisticsBuilder(empty);
+      long[][] documents = { ANSWER, { 1, 2 }, { 2 }, { 5 } };
+      for (int i = 0; i < documents.length; i++)
+        builder.addDocument(CorpusStatisticsBuilder.documentId(7, i + 1),
+                vector(documents[i].clone()));
+      builder.write(file.getPath(), empty);
+      CorpusStatistics corpus = CorpusStatistics.open(file.getPath());
+      assertEquals(4, corpus.documentCount());
+      assertEquals(3, corpus.documentFrequency(2));
+      assertEquals(1, corpus.documentFrequency(3));
+      assertEquals(0, corpus.documentFrequency(4));
+      assertEquals(2.0, corpus.averageLength(), DELTA);
+
+      // term 2 as before, the answer of length 4 now twice the average
+      double idf = Math.log(1 + (4 - 3 + 0.5) / (3 + 0.5));
+      double norm = 1.2 * (1 - 0.75 + 0.75 * 4 / 2.0);
+      assertEquals(idf * 2.2 / (1 + norm), StandardSimilarity.BM25.score(
+              vector(QUESTION.clone()), vector(ANSWER.clone()), corpus), DELTA);
+
+      // term 3 is now in one document
+      double idf1 = Math.log(5 / 2.0) + 1;
+      double idf2 = Math.log(5 / 4.0) + 1;
+      double idf3 = Math.log(5 / 2.0) + 1;
+      double expected = 2 * idf2 * idf2 / Math.sqrt((idf1 * idf1 + 4 * idf2 * idf2)
+              * (idf2 * idf2 + 9 * idf3 * idf3));
+      assertEquals(expected, StandardSimilarity.TFIDF_COSINE.score(vector(QUESTION.clone()),
+              vector(ANSWER.clone()), corpus), DELTA);
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.lappsgrid.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.vocabulary.Features;
+
+public class TestTokenizer {
+
+  /**
+   * @return the tokens of the text, as the pipeline makes them
+   */
+  private static List<Annotation> tokens(String text) {
+    Container container = new Container();
+    container.setText(text);
+    container = new Tokenizer().execute(new Preprocessor().execute(container));
+    return new ViewIndex(container).require(Uri.TOKEN, Tokenizer.class.getName())
+            .getAnnotations();
+  }
+
+  /**
+   * every token covers its word in the text
+   */
+  private static void assertOffsets(String text, List<Annotation> tokens) {
+    for (Annotation token : tokens)
+      assertEquals(token.getFeature(Features.Token.WORD),
+              text.substring(token.getStart().intValue(), token.getEnd().intValue()));
+  }
+
+  @Test
+  public void testWordInsidePreviousWord() {
+    String text = "Q Is this his? A1 1 his is his. A2 0 this is.";
+    List<Annotation> tokens = tokens(text);
+    assertOffsets(text, tokens);
+    // the "is" of the answer follows "his" and is not found inside it
+    Annotation is = tokens.get(4);
+    assertEquals("is", is.getFeature(Features.Token.WORD));
+    assertEquals(text.indexOf("his is") + 4, is.getStart().intValue());
+    assertTrue(is.getId().startsWith("atok"));
+  }
+
+  @Test
+  public void testUnicodeWhitespace() {
+    String text = "Q Who\u00A0loves\u2003Mary? A1 1 John\u3000loves Mary.";
+    List<Annotation> tokens = tokens(text);
+    assertOffsets(text, tokens);
+    assertEquals(6, tokens.size());
+    assertEquals("loves", tokens.get(1).getFeature(Features.Token.WORD));
+    assertEquals(6, tokens.get(1).getStart().intValue());
+    assertEquals("loves", tokens.get(4).getFeature(Features.Token.WORD));
+    assertEquals(28, tokens.get(4).getStart().intValue());
+  }
+
+  @Test
+  public void testRepeatedWords() {
+    String text = "Q a a a? A1 0 a  a\ta. A2 1 a";
+    List<Annotation> tokens = tokens(text);
+    assertOffsets(text, tokens);
+    assertEquals(7, tokens.size());
+    assertEquals(text.length() - 1, tokens.get(6).getStart().intValue());
+  }
+}